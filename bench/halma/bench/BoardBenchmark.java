@@ -0,0 +1,68 @@
+package halma.bench;
+
+import halma.CCBoard;
+import halma.CCMove;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The basic CCBoard operations on the opening, midgame and endgame
+ * positions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+	@Param({Positions.OPENING, Positions.MIDGAME, Positions.ENDGAME})
+	public String phase;
+
+	private CCBoard board;
+	private CCMove firstMove;
+
+	@Setup
+	public void setup() {
+		board = Positions.get(phase);
+		firstMove = board.getLegalMoves().get(0);
+	}
+
+	@Benchmark
+	public Object getLegalMoves() {
+		return board.getLegalMoves();
+	}
+
+	@Benchmark
+	public Object cloneBoard() {
+		return board.clone();
+	}
+
+	@Benchmark
+	public Object cloneAndMove() {
+		CCBoard b = (CCBoard) board.clone();
+		b.move(firstMove);
+		return b;
+	}
+
+	@Benchmark
+	public long makeAndUnmakeMove() {
+		board.makeMove(firstMove);
+		long hash = board.hash();
+		board.unmakeMove();
+		return hash;
+	}
+}
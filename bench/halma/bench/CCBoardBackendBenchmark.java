@@ -0,0 +1,103 @@
+package halma.bench;
+
+import halma.CCBitboardPieceStore;
+import halma.CCBoard;
+import halma.CCHashMapPieceStore;
+import halma.CCMove;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the bitboard and HashMap piece stores behind CCBoard on the
+ * same midgame position.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CCBoardBackendBenchmark {
+
+	@Param({"bitboard", "hashmap"})
+	public String backend;
+
+	private CCBoard board;
+	private CCMove firstMove;
+	private Point probe;
+
+	@Setup
+	public void setup() {
+		board = new CCBoard("hashmap".equals(backend)
+				? new CCHashMapPieceStore() : new CCBitboardPieceStore());
+		// Play the same seeded random game on both backends. Legal moves
+		// are sorted since the stores list pieces in different orders.
+		Random random = new Random(424);
+		for (int i = 0; i < 200 && board.getWinner() == CCBoard.NOBODY; i++) {
+			ArrayList<CCMove> moves = sortedMoves(board);
+			board.move(moves.get(random.nextInt(moves.size())));
+		}
+		firstMove = sortedMoves(board).get(0);
+		probe = board.getPieces(board.getTurn()).get(0);
+	}
+
+	private static ArrayList<CCMove> sortedMoves(CCBoard board) {
+		ArrayList<CCMove> moves = board.getLegalMoves();
+		Collections.sort(moves, new Comparator<CCMove>() {
+			@Override
+			public int compare(CCMove a, CCMove b) {
+				return a.toTransportable().compareTo(b.toTransportable());
+			}
+		});
+		return moves;
+	}
+
+	@Benchmark
+	public Object getLegalMoves() {
+		return board.getLegalMoves();
+	}
+
+	@Benchmark
+	public Object cloneBoard() {
+		return board.clone();
+	}
+
+	@Benchmark
+	public Object cloneAndMove() {
+		CCBoard b = (CCBoard) board.clone();
+		b.move(firstMove);
+		return b;
+	}
+
+	@Benchmark
+	public Object getPieces() {
+		return board.getPieces(board.getTurn());
+	}
+
+	@Benchmark
+	public Object getPieceAt() {
+		return board.getPieceAt(probe);
+	}
+
+	@Benchmark
+	public int getWinner() {
+		return board.getWinner();
+	}
+}
@@ -0,0 +1,79 @@
+package halma.bench;
+
+import halma.CCBoard;
+import halma.minimax.features.AdjacentToBaseFeature;
+import halma.minimax.features.AvoidOpponentBaseFeature;
+import halma.minimax.features.DontBlockFriendFeature;
+import halma.minimax.features.DontLeaveAloneFeature;
+import halma.minimax.features.Feature;
+import halma.minimax.features.HuddleFeature;
+import halma.minimax.features.LeaveBaseFeature;
+import halma.minimax.features.LinearEvaluator;
+import halma.minimax.features.ManhattanDistanceFeature;
+import halma.minimax.features.NotInGoalZoneFeature;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The whole evaluation with the minimax player's features, summed feature by
+ * feature and with the compiled LinearEvaluator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+	@Param({Positions.OPENING, Positions.MIDGAME, Positions.ENDGAME})
+	public String phase;
+
+	private CCBoard board;
+	private CCBoard original;
+	private List<Feature> features;
+	private LinearEvaluator evaluator;
+
+	@Setup
+	public void setup() {
+		board = Positions.get(phase);
+		original = Positions.get(Positions.OPENING);
+		features = Arrays.asList((Feature) new ManhattanDistanceFeature(0.9),
+				new LeaveBaseFeature(0.002),
+				new DontLeaveAloneFeature(0.005),
+				new NotInGoalZoneFeature(0.015),
+				new AdjacentToBaseFeature(0.05),
+				new HuddleFeature(0.25),
+				new AvoidOpponentBaseFeature(0.25),
+				new DontBlockFriendFeature());
+		evaluator = LinearEvaluator.compile(features);
+	}
+
+	@Benchmark
+	public double featureSum() {
+		double result = 0;
+		for (Feature feature : features) {
+			result += (feature.getWeight(board, original, 0) * feature.getScore(board, original, 0));
+		}
+		return result;
+	}
+
+	@Benchmark
+	public double linearEvaluator() {
+		return evaluator.evaluate(board, original, 0);
+	}
+}
@@ -0,0 +1,74 @@
+package halma.bench;
+
+import halma.CCBoard;
+import halma.minimax.features.AdjacentToBaseFeature;
+import halma.minimax.features.AvoidOpponentBaseFeature;
+import halma.minimax.features.DontBlockFriendFeature;
+import halma.minimax.features.DontLeaveAloneFeature;
+import halma.minimax.features.Feature;
+import halma.minimax.features.HuddleFeature;
+import halma.minimax.features.LeaveBaseFeature;
+import halma.minimax.features.ManhattanDistanceFeature;
+import halma.minimax.features.NotInGoalZoneFeature;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Feature.getScore() of each feature, for player 0 with the opening position
+ * as the root board.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureBenchmark {
+
+	@Param({Positions.OPENING, Positions.MIDGAME, Positions.ENDGAME})
+	public String phase;
+
+	@Param({"ManhattanDistance", "LeaveBase", "DontLeaveAlone", "NotInGoalZone",
+		"AdjacentToBase", "Huddle", "AvoidOpponentBase", "DontBlockFriend"})
+	public String feature;
+
+	private CCBoard board;
+	private CCBoard original;
+	private Feature instance;
+
+	@Setup
+	public void setup() {
+		board = Positions.get(phase);
+		original = Positions.get(Positions.OPENING);
+		instance = create(feature);
+	}
+
+	static Feature create(String name) {
+		if ("ManhattanDistance".equals(name)) return new ManhattanDistanceFeature(1);
+		if ("LeaveBase".equals(name)) return new LeaveBaseFeature(1);
+		if ("DontLeaveAlone".equals(name)) return new DontLeaveAloneFeature(1);
+		if ("NotInGoalZone".equals(name)) return new NotInGoalZoneFeature(1);
+		if ("AdjacentToBase".equals(name)) return new AdjacentToBaseFeature(1);
+		if ("Huddle".equals(name)) return new HuddleFeature(1);
+		if ("AvoidOpponentBase".equals(name)) return new AvoidOpponentBaseFeature(1);
+		if ("DontBlockFriend".equals(name)) return new DontBlockFriendFeature();
+		throw new IllegalArgumentException("Unknown feature: " + name);
+	}
+
+	@Benchmark
+	public double getScore() {
+		return instance.getScore(board, original, 0);
+	}
+}
@@ -0,0 +1,72 @@
+package halma.bench;
+
+import halma.CCBoard;
+import halma.CCMCTSPlayer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Playouts per second of CCMCTSPlayer on one thread. Each invocation is a
+ * search of SEARCH_MILLIS from a fresh tree, and the playouts are reported
+ * as the secondary "playouts" result, in playouts per second: the counter
+ * counts operations, which JMH divides by the time of the iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MCTSBenchmark {
+
+	private static final long SEARCH_MILLIS = 100;
+
+	@Param({Positions.OPENING, Positions.MIDGAME, Positions.ENDGAME})
+	public String phase;
+
+	private CCBoard board;
+	private CCMCTSPlayer player;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long playouts;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			playouts = 0;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		board = Positions.get(phase);
+	}
+
+	@Setup(Level.Invocation)
+	public void newPlayer() {
+		// A new player so that no tree is reused between invocations
+		player = new CCMCTSPlayer();
+	}
+
+	@Benchmark
+	public Object search(Counters counters) {
+		Object pair = player.search((CCBoard) board.clone(), System.currentTimeMillis() + SEARCH_MILLIS);
+		counters.playouts += player.getPlayouts();
+		return pair;
+	}
+}
@@ -0,0 +1,64 @@
+package halma.bench;
+
+import halma.CCBoard;
+import halma.minimax.BoardPointPair;
+import halma.minimax.CombinedMoveGenerator;
+import halma.minimax.MoveGenerator;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Full iteration of the move generators of the minimax player, which
+ * includes making a board for every turn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGeneratorBenchmark {
+
+	@Param({Positions.OPENING, Positions.MIDGAME, Positions.ENDGAME})
+	public String phase;
+
+	private CCBoard board;
+
+	@Setup
+	public void setup() {
+		board = Positions.get(phase);
+	}
+
+	@Benchmark
+	public int moveGenerator(Blackhole blackhole) {
+		return drain(new MoveGenerator(board, board.getTurn()), blackhole);
+	}
+
+	@Benchmark
+	public int combinedMoveGenerator(Blackhole blackhole) {
+		return drain(new CombinedMoveGenerator(board, board.getTurn()), blackhole);
+	}
+
+	private static int drain(Iterator<BoardPointPair> generator, Blackhole blackhole) {
+		int count = 0;
+		while (generator.hasNext()) {
+			blackhole.consume(generator.next());
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,84 @@
+package halma.bench;
+
+import halma.CCBoard;
+import halma.CCMove;
+import halma.geometry.Geometry;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * The fixed positions the benchmarks run on. Each one is reached by a seeded
+ * game and is at the start of player 0's turn, so the results of different
+ * runs and builds can be compared.
+ */
+final class Positions {
+
+	/** The values of the phase parameter of the benchmarks. */
+	static final String OPENING = "opening";
+	static final String MIDGAME = "midgame";
+	static final String ENDGAME = "endgame";
+
+	private Positions() {
+	}
+
+	/**
+	 * @param phase one of OPENING, MIDGAME or ENDGAME
+	 * @return a new copy of the position
+	 */
+	static CCBoard get(String phase) {
+		if (OPENING.equals(phase)) {
+			// Still mostly in the home bases
+			return play(424, 12, 0.0, 0);
+		} else if (MIDGAME.equals(phase)) {
+			// The pieces meet in the middle of the board
+			return play(424, 300, 0.6, 0);
+		} else if (ENDGAME.equals(phase)) {
+			// Most of player 0's pieces are in the goal base
+			return play(424, 0, 0.8, 9);
+		}
+		throw new IllegalArgumentException("Unknown phase: " + phase);
+	}
+
+	/**
+	 * Play a seeded game, picking the move getting closest to the goal with
+	 * some probability and a random one otherwise.
+	 * @param seed the seed of the game
+	 * @param plies the number of moves to play at least
+	 * @param greed the probability of the greedy move
+	 * @param inGoal the number of player 0's pieces to get in the goal base
+	 */
+	private static CCBoard play(long seed, int plies, double greed, int inGoal) {
+		for (;; seed++) {
+			CCBoard board = new CCBoard();
+			Random random = new Random(seed);
+			for (int i = 0; board.getWinner() == CCBoard.NOBODY; i++) {
+				if (i >= plies && board.getPiecesInGoal(0) >= inGoal
+						&& board.getLastMoved() == null && board.getTurn() == 0) {
+					return board;
+				}
+				ArrayList<CCMove> moves = board.getLegalMoves();
+				board.move(random.nextDouble() < greed ? greedyMove(moves) : moves.get(random.nextInt(moves.size())));
+			}
+			// The game was won before reaching the position, try another one
+		}
+	}
+
+	private static CCMove greedyMove(ArrayList<CCMove> moves) {
+		CCMove best = moves.get(0);
+		int bestGain = Integer.MIN_VALUE;
+		for (CCMove move : moves) {
+			if (move.getFrom() == null) {
+				continue;
+			}
+			int player = move.getPlayerID();
+			int gain = Geometry.goalManhattan(CCBoard.squareOf(move.getFrom().x, move.getFrom().y), player)
+					- Geometry.goalManhattan(CCBoard.squareOf(move.getTo().x, move.getTo().y), player);
+			if (gain > bestGain) {
+				bestGain = gain;
+				best = move;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,87 @@
+package boardgame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The moves of a game as shown by the GUI, and the board after each of
+ * them.
+ *
+ * Entry 0 is the initial board, with no move, and entry i the board after
+ * move i. An entry without a move, like the one for the outcome at the end
+ * of the game, repeats the board before it.
+ *
+ * Only one board in CHECKPOINT_INTERVAL is kept, as a copy. The other ones
+ * are replayed from the checkpoint before them when they are asked for, so
+ * the history takes memory for its moves only, and adding a move does not
+ * copy the board. The last board built is kept, as the GUI asks for the
+ * same one several times.
+ */
+class BoardHistory {
+    static final int CHECKPOINT_INTERVAL = 32;
+
+    private final List<Move> moves = new ArrayList<Move>();
+    private final List<Board> checkpoints = new ArrayList<Board>();
+    private int cachedIndex = -1;
+    private Board cached;
+
+    /**
+     * Add an entry.
+     * @param b the board after the move, which is not kept, so the caller
+     * may go on playing moves on it. Null if there is no game.
+     * @param m the move, or null
+     */
+    void add(Board b, Move m) {
+        if (moves.size() % CHECKPOINT_INTERVAL == 0)
+            checkpoints.add(b == null ? null : (Board) b.clone());
+        moves.add(m);
+    }
+
+    /** @return the number of entries */
+    int size() {
+        return moves.size();
+    }
+
+    /** @return the move of an entry, null for none */
+    Move getMove(int index) {
+        return moves.get(index);
+    }
+
+    /** @return the moves of a range of entries, without the nulls */
+    Move[] getMoves(int from, int to) {
+        List<Move> list = new ArrayList<Move>();
+        for (int i = from; i < to; i++)
+            if (moves.get(i) != null) list.add(moves.get(i));
+        return list.toArray(new Move[list.size()]);
+    }
+
+    /**
+     * @return the board of an entry, or null if there is no game. It is
+     * shared with the next callers asking for the same entry, and must not
+     * be changed.
+     */
+    Board getBoard(int index) {
+        if (index < 0 || index >= moves.size())
+            throw new IndexOutOfBoundsException("No board " + index + " of " + moves.size());
+        if (index != cachedIndex) {
+            int checkpoint = index / CHECKPOINT_INTERVAL;
+            Board b = checkpoints.get(checkpoint);
+            if (b == null) return null;
+            b = (Board) b.clone();
+            for (int i = checkpoint * CHECKPOINT_INTERVAL + 1; i <= index; i++) {
+                Move m = moves.get(i);
+                if (m != null) b.move(m);
+            }
+            cached = b;
+            cachedIndex = index;
+        }
+        return cached;
+    }
+
+    void clear() {
+        moves.clear();
+        checkpoints.clear();
+        cached = null;
+        cachedIndex = -1;
+    }
+}
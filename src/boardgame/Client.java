@@ -5,6 +5,9 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
 
 /**
@@ -30,35 +33,55 @@ public class Client implements Runnable {
 
     private static void printUsage() {
         System.err.println( 
-            "Usage: java boardgame.Client [PlayerClass [serverName [serverPort]]]\n" +
+            "Usage: java boardgame.Client [PlayerClass [serverName [serverPort [count]]]]\n" +
             "  Where PlayerClass is the player to be run (default=" + DEFAULT_PLAYER + "\n" + 
-            "        serverName is the server address (default=" + DEFAULT_SERVER + ") and\n" +
-            "        serverPort is the port number (default="+DEFAULT_PORT+").\n" +
+            "        serverName is the server address (default=" + DEFAULT_SERVER + "),\n" +
+            "        serverPort is the port number (default="+DEFAULT_PORT+") and\n" +
+            "        count is the number of clients to run in this JVM (default=1),\n" +
+            "        on the threads selected by -D" + Threads.PROPERTY + "=" +
+            Threads.PLATFORM + "|" + Threads.VIRTUAL + ".\n" +
             "  e.g.\n" +
             "  java boardgame.Client halma.CCRandomPlayer localhost " + DEFAULT_PORT );
     }
     
     public static void main(String[] args) {
-        if( args.length > 3 ) {
+        if( args.length > 4 ) {
             printUsage(); return;
         } else {
-            Player p;
+            Client clients[];
             try {
-                Class cl = Class.forName(args.length > 0 ? args[0] : DEFAULT_PLAYER);
-                java.lang.reflect.Constructor co = cl.getConstructor(new Class[0]);
-                p = (Player) co.newInstance(new Object[0]);
-            } catch (Exception e) {
-                System.err.println( "Failed to create Player object: " + e);
-                printUsage();
+                int count = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+                clients = new Client[count];
+                for( int i = 0; i < count; i++ ) {
+                    Player p;
+                    try {
+                        Class cl = Class.forName(args.length > 0 ? args[0] : DEFAULT_PLAYER);
+                        java.lang.reflect.Constructor co = cl.getConstructor(new Class[0]);
+                        p = (Player) co.newInstance(new Object[0]);
+                    } catch (Exception e) {
+                        System.err.println( "Failed to create Player object: " + e);
+                        printUsage();
+                        return;
+                    }
+                    clients[i] = new Client(p, 
+                        args.length > 1 ? args[1] : DEFAULT_SERVER, 
+                        args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT);
+                }
+            } catch(Exception e) { printUsage(); return; }
+            if( clients.length == 1 ) {
+                clients[0].run();
                 return;
             }
-            Client client;
-            try {
-                client = new Client(p, 
-                    args.length > 1 ? args[1] : DEFAULT_SERVER, 
-                    args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT);
-            } catch(Exception e) { printUsage(); return; }
-            client.run();
+            // Run the clients on the shared executor and wait for them
+            List<Future<?>> running = new ArrayList<Future<?>>();
+            for( int i = 0; i < clients.length; i++ )
+                running.add( Threads.getExecutor().submit( clients[i] ) );
+            for( int i = 0; i < running.size(); i++ ) {
+                try { running.get(i).get(); }
+                catch( Exception e ) {
+                    System.err.println( "Client failed: " + e );
+                }
+            }
         }
     }
     
@@ -0,0 +1,102 @@
+package boardgame;
+
+import java.util.Arrays;
+
+/**
+ * The time the players of a game have for their moves.
+ *
+ * With a flat timeout each move must be sent within the same time. With a
+ * chess clock each player has a bank of time for the whole game, which
+ * their moves use up, and which gets an increment once their turn is over.
+ * A turn may be several moves, like a chain of hops, and only gets one
+ * increment. The server only times the players between sending PLAY and
+ * receiving their move.
+ */
+public class GameClock {
+    private final long perMove;
+    private final long bank;
+    private final long increment;
+    private final long[] remaining;
+
+    private int running = -1;
+    private long startNanos;
+
+    private GameClock(int players, long perMove, long bank, long increment) {
+        this.perMove = perMove;
+        this.bank = bank;
+        this.increment = increment;
+        this.remaining = new long[players];
+        Arrays.fill(remaining, bank);
+    }
+
+    /**
+     * @return a clock allowing the same time for every move
+     */
+    public static GameClock perMove(int players, long timeoutMillis) {
+        return new GameClock(players, timeoutMillis, 0, 0);
+    }
+
+    /**
+     * @param bankMillis the time of each player for the whole game
+     * @param incrementMillis the time added at the end of each turn
+     * @return a chess clock
+     */
+    public static GameClock chess(int players, long bankMillis, long incrementMillis) {
+        if (bankMillis <= 0 || incrementMillis < 0)
+            throw new IllegalArgumentException("Invalid clock: " + bankMillis + "+" + incrementMillis);
+        return new GameClock(players, 0, bankMillis, incrementMillis);
+    }
+
+    /**
+     * @param spec a chess clock given as bank+increment in milliseconds,
+     * e.g. 300000+2000, or the bank alone
+     * @return the chess clock
+     */
+    public static GameClock parse(int players, String spec) {
+        int plus = spec.indexOf('+');
+        if (plus < 0)
+            return chess(players, Long.parseLong(spec.trim()), 0);
+        return chess(players, Long.parseLong(spec.substring(0, plus).trim()),
+                Long.parseLong(spec.substring(plus + 1).trim()));
+    }
+
+    public boolean isChessClock() { return bank > 0; }
+
+    /**
+     * Start timing a move.
+     * @return the time the player has for it, in milliseconds
+     */
+    public synchronized long start(int player) {
+        running = player;
+        startNanos = System.nanoTime();
+        return isChessClock() ? remaining[player] : perMove;
+    }
+
+    /**
+     * Stop timing the move started last, if any.
+     * @param turnOver whether the move ended the player's turn
+     * @return the time the move took, in milliseconds
+     */
+    public synchronized long stop(boolean turnOver) {
+        if (running < 0) return 0;
+        long elapsed = (System.nanoTime() - startNanos) / 1000000;
+        if (isChessClock()) {
+            // A move within the last tick of the timer is let through
+            remaining[running] = Math.max(0, remaining[running] - elapsed);
+            if (turnOver) remaining[running] += increment;
+        }
+        running = -1;
+        return elapsed;
+    }
+
+    /**
+     * @return the time left in the player's bank, or the time per move
+     */
+    public synchronized long getRemaining(int player) {
+        return isChessClock() ? remaining[player] : perMove;
+    }
+
+    public String toString() {
+        return isChessClock() ? bank + "+" + increment + " ms" : perMove + " ms per move";
+    }
+}
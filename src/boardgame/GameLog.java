@@ -0,0 +1,239 @@
+package boardgame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The log file of one game and its line in the outcome file.
+ *
+ * A log is named after its game ID, e.g. game00042.log. The last ID given
+ * out is kept in a small counter file in the log directory, which is locked
+ * while the next ID is taken, so servers in the same JVM or in different
+ * ones never get the same ID, and starting a game does not depend on the
+ * number of logs. Without a counter file, as in an old log directory, the
+ * IDs go on from the highest one of the logs. A log file is only taken if
+ * it did not exist yet, in case a server without the counter made it. For
+ * the same reason the counter is not forced to the disk: if a crash loses
+ * it, the IDs of the logs written since are skipped.
+ *
+ * The lines are written by the shared LogWriter, so writing to the log does
+ * not wait for the disk.
+ */
+public class GameLog {
+    private static final Object ID_LOCK = new Object();
+
+    private final File logDir;
+    private final int gameID;
+    private final String fileName;
+    private final LogWriter writer;
+    private final LogWriter.Target out;
+
+    private GameLog(File logDir, int gameID, String fileName, LogWriter writer, LogWriter.Target out) {
+        this.logDir = logDir;
+        this.gameID = gameID;
+        this.fileName = fileName;
+        this.writer = writer;
+        this.out = out;
+    }
+
+    /**
+     * Create the log of a new game.
+     * @param logDir the log directory, which must exist
+     * @return the log, open for writing
+     */
+    public static GameLog create(File logDir) throws IOException {
+        int gameID;
+        File logFile;
+        // The file lock is held by the JVM, so its threads take turns first
+        synchronized (ID_LOCK) {
+            RandomAccessFile counter = new RandomAccessFile(new File(logDir, Server.ID_FILE), "rw");
+            try {
+                FileChannel channel = counter.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    gameID = readCounter(channel);
+                    if (gameID < 0) gameID = lastGameID(logDir);
+                    do {
+                        gameID++;
+                        logFile = new File(logDir, fileName(gameID));
+                    } while (!logFile.createNewFile());
+                    writeCounter(channel, gameID);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                counter.close();
+            }
+        }
+        LogWriter writer = LogWriter.getShared();
+        LogWriter.Target out = writer.open(new FileOutputStream(logFile));
+        return new GameLog(logDir, gameID, logFile.getName(), writer, out);
+    }
+
+    /**
+     * @return the ID in the counter file, or -1 if it is empty or invalid
+     */
+    private static int readCounter(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        channel.position(0);
+        while (buf.hasRemaining() && channel.read(buf) > 0) {}
+        buf.flip();
+        String str = StandardCharsets.US_ASCII.decode(buf).toString().trim();
+        try {
+            int id = Integer.parseInt(str);
+            return id >= 0 ? id : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeCounter(FileChannel channel, int gameID) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap((gameID + "\n").getBytes(StandardCharsets.US_ASCII));
+        channel.truncate(0);
+        channel.position(0);
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+
+    /**
+     * @return the highest game ID of the logs in the directory, 0 if none.
+     * This reads the whole directory.
+     */
+    static int lastGameID(File logDir) throws IOException {
+        File[] files = logDir.listFiles();
+        if (files == null)
+            throw new IOException("Log directory doesn't seem to exist.");
+        int max = 0, plen = Server.LOG_PREFIX.length(), slen = Server.LOG_SUFFIX.length();
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if (name.startsWith(Server.LOG_PREFIX) && name.endsWith(Server.LOG_SUFFIX)) {
+                try {
+                    int v = Integer.parseInt(name.substring(plen, name.length() - slen));
+                    if (v > max) max = v;
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the name of the log of a game, e.g. game00042.log, with more
+     * digits past 99999
+     */
+    public static String fileName(int gameID) {
+        return Server.LOG_PREFIX + String.format("%05d", gameID) + Server.LOG_SUFFIX;
+    }
+
+    public int getGameID() { return gameID; }
+
+    public String getFileName() { return fileName; }
+
+    /**
+     * Write the comment lines at the start of the log.
+     * @param host the host the server runs on
+     * @param port the port the server listens on
+     * @param board the board of the game
+     * @param timeout the time allowed per move in milliseconds
+     */
+    public void writeHeader(String host, int port, Board board, int timeout) {
+        comment("Server version " + Server.VERSION + " running on " + host + ":" + port);
+        comment("Game ID: " + gameID);
+        comment("Board class: " + board.getClass().getName());
+        comment("Timeout: " + timeout);
+        comment("Date: " + (new Date()).toString());
+    }
+
+    /** Write a comment line. */
+    public void comment(String str) {
+        writer.write(out, "# " + str);
+    }
+
+    /** Write a line, a message sent to the players. */
+    public void println(String str) {
+        writer.write(out, str);
+    }
+
+    /** Write the end date and close the log. */
+    public void close() {
+        comment("Game ended: " + (new Date()).toString());
+        writer.close(out);
+    }
+
+    /**
+     * Append the outcome of the game to the outcome file of the log
+     * directory, as one tab separated line: the game ID, the names of the
+     * players, the winner, the name of the winning player, the number of
+     * turns, the log file and the reason the game ended.
+     * @param board the board at the end of the game
+     * @param names the names of the players by ID, null for a player who
+     * never connected
+     * @param outcome the outcome broadcast to the players, e.g. DRAW
+     * @param reason why the game ended, empty if it was played to the end
+     */
+    public void appendOutcome(Board board, String[] names, String outcome, String reason) {
+        StringBuilder out = new StringBuilder();
+        out.append(Integer.toString(gameID) + '\t');
+        int win = -1;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null)
+                out.append("NOBODY\t");
+            else {
+                out.append(names[i] + '\t');
+                if (board.getWinner() == i) win = i;
+            }
+        }
+        out.append((win > -1 ? board.getNameForID(win) : outcome) + '\t');
+        out.append((win > -1 ? names[win] : "NOBODY") + '\t');
+        out.append(Integer.toString(board.getTurnsPlayed()) + '\t');
+        out.append(fileName + '\t');
+        out.append(reason);
+        writer.append(new File(logDir, Server.OUTCOME_FILE), out.toString());
+    }
+
+    /**
+     * Read the lines of a log. A log cut short, by a crash for instance, may
+     * end with part of a line, without its line separator, which is dropped.
+     * @param file the log
+     * @return the complete lines
+     */
+    public static List<String> readLines(String file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        Reader in = new InputStreamReader(new FileInputStream(file));
+        try {
+            StringBuilder line = new StringBuilder();
+            char[] buf = new char[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    char c = buf[i];
+                    if (c == '\n') {
+                        int len = line.length();
+                        if (len > 0 && line.charAt(len - 1) == '\r') line.setLength(len - 1);
+                        lines.add(line.toString());
+                        line.setLength(0);
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+            if (line.length() > 0)
+                System.err.println("Warning: dropping incomplete last line of " + file);
+        } finally {
+            in.close();
+        }
+        return lines;
+    }
+}
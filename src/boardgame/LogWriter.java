@@ -0,0 +1,264 @@
+package boardgame;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes the game logs on a thread of its own, so that the games never wait
+ * for the disk while they hold their locks.
+ *
+ * The games put their lines in a bounded ring buffer, and only wait if it is
+ * full. The writer thread takes all the lines there are at once, and writes
+ * them to the buffers of their files. A file is flushed when its buffer
+ * holds FLUSH_BYTES, when it has not been flushed for FLUSH_MILLIS, or when
+ * it is closed at the end of the game.
+ *
+ * A line is only ever written whole and with its line separator, so a log
+ * cut short by a crash ends with complete lines, and possibly one partial
+ * line without a separator, which readers should drop (see
+ * GameLog.readLines()).
+ */
+public class LogWriter {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int FLUSH_BYTES = 64 * 1024;
+    public static final long FLUSH_MILLIS = 200;
+    private static final String EOL = System.getProperty("line.separator");
+
+    private static final int LINE = 0;
+    private static final int CLOSE = 1;
+    private static final int APPEND = 2;
+    private static final int SYNC = 3;
+
+    private static LogWriter shared;
+
+    /** A file written by the writer thread. */
+    public static final class Target {
+        private final Writer out;
+        private int buffered = 0;
+        private boolean closed = false;
+
+        private Target(OutputStream out) {
+            this.out = new BufferedWriter(new OutputStreamWriter(out), FLUSH_BYTES + 4096);
+        }
+    }
+
+    // The ring buffer, guarded by lock
+    private final int[] kinds;
+    private final Object[] targets;
+    private final String[] texts;
+    private long head = 0, tail = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Used by the writer thread only
+    private final Set<Target> dirty = new LinkedHashSet<Target>();
+    private long lastFlush = System.nanoTime();
+
+    /**
+     * @return the writer shared by all games in this JVM, which is drained
+     * when the JVM exits
+     */
+    public static synchronized LogWriter getShared() {
+        if (shared == null) {
+            shared = new LogWriter(DEFAULT_CAPACITY);
+            final LogWriter w = shared;
+            Runtime.getRuntime().addShutdownHook(new Thread("boardgame-log-drain") {
+                public void run() { w.sync(5000); }
+            });
+        }
+        return shared;
+    }
+
+    /**
+     * @param capacity the number of lines the ring buffer holds
+     */
+    public LogWriter(int capacity) {
+        kinds = new int[capacity];
+        targets = new Object[capacity];
+        texts = new String[capacity];
+        Thread t = new Thread(new Runnable() {
+            public void run() { writeLoop(); }
+        }, "boardgame-log-writer");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** @return a target writing to the stream, which it will close */
+    public Target open(OutputStream out) {
+        return new Target(out);
+    }
+
+    /** Write a line to a target. */
+    public void write(Target target, String line) {
+        put(LINE, target, line);
+    }
+
+    /** Flush and close a target once the lines before are written. */
+    public void close(Target target) {
+        put(CLOSE, target, null);
+    }
+
+    /** Append a line to a file, opening and closing it. */
+    public void append(File file, String line) {
+        put(APPEND, file, line);
+    }
+
+    /**
+     * Wait until the lines written so far are on disk, or at least handed
+     * over to the system.
+     * @param timeoutMillis the time to wait at most
+     * @return whether they were
+     */
+    public boolean sync(long timeoutMillis) {
+        CountDownLatch done = new CountDownLatch(1);
+        put(SYNC, done, null);
+        try {
+            return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void put(int kind, Object target, String text) {
+        lock.lock();
+        try {
+            while (tail - head == kinds.length)
+                notFull.awaitUninterruptibly();
+            int i = (int) (tail % kinds.length);
+            kinds[i] = kind;
+            targets[i] = target;
+            texts[i] = text;
+            tail++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        int capacity = kinds.length;
+        int[] batchKinds = new int[capacity];
+        Object[] batchTargets = new Object[capacity];
+        String[] batchTexts = new String[capacity];
+        while (true) {
+            int n = 0;
+            lock.lock();
+            try {
+                while (head == tail) {
+                    if (dirty.isEmpty()) {
+                        notEmpty.awaitUninterruptibly();
+                    } else {
+                        long wait = lastFlush + TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS) - System.nanoTime();
+                        if (wait <= 0) break;
+                        try {
+                            notEmpty.awaitNanos(wait);
+                        } catch (InterruptedException e) {
+                            // Keep writing
+                        }
+                    }
+                }
+                // Take the whole batch
+                for (; head < tail; head++, n++) {
+                    int i = (int) (head % capacity);
+                    batchKinds[n] = kinds[i];
+                    batchTargets[n] = targets[i];
+                    batchTexts[n] = texts[i];
+                    targets[i] = null;
+                    texts[i] = null;
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            for (int i = 0; i < n; i++) {
+                process(batchKinds[i], batchTargets[i], batchTexts[i]);
+                batchTargets[i] = null;
+                batchTexts[i] = null;
+            }
+            if (System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS))
+                flushAll();
+        }
+    }
+
+    private void process(int kind, Object target, String text) {
+        switch (kind) {
+        case LINE: {
+            Target t = (Target) target;
+            if (t.closed) return;
+            try {
+                t.out.write(text);
+                t.out.write(EOL);
+                t.buffered += text.length() + EOL.length();
+                if (t.buffered >= FLUSH_BYTES) flush(t);
+                else dirty.add(t);
+            } catch (IOException e) {
+                failed(t, e);
+            }
+            break;
+        }
+        case CLOSE: {
+            Target t = (Target) target;
+            if (t.closed) return;
+            dirty.remove(t);
+            t.closed = true;
+            try {
+                t.out.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close log: " + e);
+            }
+            break;
+        }
+        case APPEND:
+            try {
+                Writer out = new OutputStreamWriter(new FileOutputStream((File) target, true));
+                out.write(text + EOL);
+                out.close();
+            } catch (IOException e) {
+                System.err.println("Failed to append to '" + target + "': " + e);
+            }
+            break;
+        case SYNC:
+            flushAll();
+            ((CountDownLatch) target).countDown();
+            break;
+        }
+    }
+
+    private void flush(Target t) {
+        dirty.remove(t);
+        t.buffered = 0;
+        try {
+            t.out.flush();
+        } catch (IOException e) {
+            failed(t, e);
+        }
+    }
+
+    private void flushAll() {
+        Target[] ts = dirty.toArray(new Target[dirty.size()]);
+        for (int i = 0; i < ts.length; i++)
+            flush(ts[i]);
+        lastFlush = System.nanoTime();
+    }
+
+    private void failed(Target t, IOException e) {
+        System.err.println("Failed to write log, giving up on it: " + e);
+        dirty.remove(t);
+        t.closed = true;
+        try { t.out.close(); } catch (IOException ex) {}
+    }
+}
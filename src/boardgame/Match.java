@@ -0,0 +1,178 @@
+package boardgame;
+
+import halma.CCBoard;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Plays one game between Player instances in the same JVM, without sockets
+ * or a GUI.
+ *
+ * The game runs as the Server and Client would run it: the players get
+ * their colour and the START message, the player to move gets a copy of the
+ * board in chooseMove(), the move goes through its transportable form and
+ * the board's filterMove(), and every player is told of every move played.
+ * A player which plays an illegal move, throws, returns no move or runs out
+ * of time loses, as with forceLoser() on the server. The game ends when the
+ * board has a winner, which includes the board's own turn limit.
+ *
+ * chooseMove() is called on a thread of the given executor so that it can
+ * be timed out. A player which times out is interrupted but may keep its
+ * thread busy until it returns.
+ */
+public class Match implements Callable<Match.Result> {
+
+    private final Board board;
+    private final Player[] players;
+    private final long timeout;
+    private final ExecutorService moveExecutor;
+
+    /** The outcome of a game. */
+    public static class Result {
+        /** The winner as returned by Board.getWinner(). */
+        public final int winner;
+        /** The message of the winner line of the log, e.g. "WINNER 1". */
+        public final String outcome;
+        /** Why the game ended: empty if it was played to the end. */
+        public final String reason;
+        public final int turns;
+        public final int moves;
+        /** Time spent in chooseMove() by each player, in milliseconds. */
+        public final long[] thinkingMillis;
+        /** The players, indexed by player ID. */
+        public final Player[] players;
+
+        Result(int winner, String outcome, String reason, int turns, int moves, long[] thinkingMillis,
+                Player[] players) {
+            this.winner = winner;
+            this.outcome = outcome;
+            this.reason = reason;
+            this.turns = turns;
+            this.moves = moves;
+            this.thinkingMillis = thinkingMillis;
+            this.players = players;
+        }
+    }
+
+    /**
+     * @param board the board in its starting position
+     * @param players the players, indexed by player ID
+     * @param timeout the time allowed for each move in milliseconds
+     * @param moveExecutor runs the calls to chooseMove()
+     */
+    public Match(Board board, Player[] players, long timeout, ExecutorService moveExecutor) {
+        if (players.length != board.getNumberOfPlayers())
+            throw new IllegalArgumentException("Need " + board.getNumberOfPlayers() + " players");
+        this.board = board;
+        this.players = players;
+        this.timeout = timeout;
+        this.moveExecutor = moveExecutor;
+    }
+
+    /**
+     * Play the game to the end.
+     * @return the outcome
+     */
+    @Override
+    public Result call() {
+        long[] thinking = new long[players.length];
+        int moves = 0;
+        for (int i = 0; i < players.length; i++) {
+            players[i].setColor(i);
+        }
+        for (int i = 0; i < players.length; i++) {
+            players[i].gameStarted("START " + board.getNameForID(i) + " " + players[i].getName());
+        }
+
+        String reason = "";
+        while (board.getWinner() == Board.NOBODY) {
+            int turn = board.getTurn();
+            Move m;
+            if (turn == Board.BOARD) {
+                m = board.getBoardMove();
+            } else {
+                long start = System.currentTimeMillis();
+                try {
+                    m = requestMove(players[turn]);
+                } catch (TimeoutException e) {
+                    forceLoser(turn);
+                    reason = "TIMEOUT " + board.getNameForID(turn);
+                    break;
+                } catch (Exception e) {
+                    forceLoser(turn);
+                    reason = "ERROR " + board.getNameForID(turn) + ": " + e;
+                    break;
+                } finally {
+                    thinking[turn] += System.currentTimeMillis() - start;
+                }
+                if (m == null) {
+                    forceLoser(turn);
+                    reason = "NO MOVE " + board.getNameForID(turn);
+                    break;
+                }
+            }
+
+            Move[] ms;
+            try {
+                // Only the transportable form reaches the server
+                m = board.parseMove(m.toTransportable());
+                Object o = board.filterMove(m);
+                ms = o instanceof Move ? new Move[] {(Move) o} : (Move[]) o;
+                for (int i = 0; i < ms.length; i++) {
+                    m = ms[i];
+                    board.move(m);
+                    moves++;
+                    for (int p = 0; p < players.length; p++) {
+                        players[p].movePlayed((Board) board.clone(), m);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                forceLoser(turn);
+                reason = "ILLEGAL MOVE: " + m.toPrettyString();
+                break;
+            }
+        }
+
+        String outcome;
+        switch (board.getWinner()) {
+        case Board.DRAW: outcome = "DRAW"; break;
+        case Board.NOBODY: outcome = "UNDECIDED"; break;
+        default: outcome = "WINNER " + board.getNameForID(board.getWinner());
+        }
+        for (int i = 0; i < players.length; i++) {
+            players[i].gameOver("GAMEOVER " + reason);
+        }
+        return new Result(board.getWinner(), outcome, reason, board.getTurnsPlayed(), moves, thinking, players);
+    }
+
+    private Move requestMove(final Player player) throws Exception {
+        final Board copy = (Board) board.clone();
+        Future<Move> future = moveExecutor.submit(new Callable<Move>() {
+            @Override
+            public Move call() {
+                return player.chooseMove(copy);
+            }
+        });
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private void forceLoser(int c) {
+        if (c == Board.BOARD)
+            board.forceWinner(Board.DRAW);
+        else
+            board.forceWinner((CCBoard.getTeamIndex(c) + 1) % 2);
+    }
+}
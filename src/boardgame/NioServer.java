@@ -0,0 +1,633 @@
+package boardgame;
+
+import halma.CCBoard;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Boardgame server running many games at once without a thread per client.
+ *
+ * Clients connect and send their START message as with the Server, and
+ * wait in a lobby. As soon as there are enough of them for a game, the
+ * first ones to arrive are given the player IDs in their order of arrival
+ * and play a game on their own board, with their own log file and move
+ * timer. The messages, the log files and the outcome file are the same as
+ * those of the Server, so the Client and the ServerGUI work unchanged.
+ *
+ * All sockets are non-blocking and served by a few selector threads, each
+ * one owning a share of the connections. The moves of a game are processed
+ * under the lock of the game by the thread which read them, and the timeouts
+ * of all games are kept by the shared TimeoutService. Nothing here blocks
+ * except for writing the log files.
+ */
+public class NioServer implements Runnable {
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private final String boardClass;
+    private final int numberOfPlayers;
+    private final int port;
+    private final int timeout;
+    private final boolean quiet;
+    private final File logDir;
+    private String hostname = "localhost";
+
+    private ServerSocketChannel serverChannel;
+    private final SelectorLoop[] loops;
+    private int nextLoop = 0;
+    private final TimeoutService timeouts = TimeoutService.getShared();
+    // The chess clock as bank+increment, or null for the timeout per move
+    private String clockSpec = null;
+    private volatile boolean stopped = false;
+
+    // Clients who sent START and wait for a game, in order of arrival
+    private final ArrayDeque<Connection> lobby = new ArrayDeque<Connection>();
+    private final AtomicInteger runningGames = new AtomicInteger();
+    private final AtomicInteger finishedGames = new AtomicInteger();
+
+    private static void printUsage() {
+        System.err.println(
+                "\nUsage: java boardgame.NioServer [-p port] [-t n] [-c bank+inc] [-b class] [-s n] [-v]\n" +
+                "  Where '-p port' sets the port to listen on. (default=" + Server.DEFAULT_PORT + ")\n" +
+                "        '-t n' sets the timeout. (default=" + Server.DEFAULT_TIMEOUT + ")\n" +
+                "        '-c bank+inc' gives each player a chess clock instead, with a bank\n" +
+                "              of time for the game and an increment per turn, in ms.\n" +
+                "        '-b class' determines the game to be run. (default=" + Server.DEFAULT_BOARDCLASS + ")\n" +
+                "        '-s n' sets the number of selector threads. (default=1)\n" +
+                "        '-v' indicates to dump the logs of all games to console.\n" +
+                "  e.g.\n" +
+                "    java boardgame.NioServer -p " + Server.DEFAULT_PORT + " -t " + Server.DEFAULT_TIMEOUT +
+                " -b " + Server.DEFAULT_BOARDCLASS + "\n" +
+                "  runs games for any number of clients until it is killed.\n");
+    }
+
+    public static void main(String[] args) {
+        int port = Server.DEFAULT_PORT;
+        int timeout = Server.DEFAULT_TIMEOUT;
+        String boardClass = Server.DEFAULT_BOARDCLASS;
+        int selectors = 1;
+        String clock = null;
+        boolean quiet = true;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-p")) port = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-t")) timeout = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-b")) boardClass = args[++i];
+                else if (args[i].equals("-c")) clock = args[++i];
+                else if (args[i].equals("-s")) selectors = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-v")) quiet = false;
+                else { printUsage(); return; }
+            }
+        } catch (Exception e) { printUsage(); return; }
+
+        try {
+            NioServer server = new NioServer(boardClass, port, timeout, selectors, quiet);
+            if (clock != null) server.setClock(clock);
+            server.run();
+        } catch (Exception e) {
+            System.err.println("Failed to start server:");
+            e.printStackTrace();
+            printUsage();
+        }
+    }
+
+    /**
+     * @param boardClass the class of the boards of the games
+     * @param port the port to listen on, 0 for any free port
+     * @param timeout the time allowed for each move in milliseconds
+     * @param selectors the number of selector threads
+     * @param quiet whether not to dump the logs to console
+     */
+    public NioServer(String boardClass, int port, int timeout, int selectors, boolean quiet) throws Exception {
+        this.boardClass = boardClass;
+        this.numberOfPlayers = createBoard().getNumberOfPlayers();
+        this.port = port;
+        this.timeout = timeout;
+        this.quiet = quiet;
+        this.logDir = new File(Server.LOG_DIR);
+        if (!logDir.isDirectory() && !logDir.mkdirs())
+            throw new IOException("Failed to create log directory.");
+
+        loops = new SelectorLoop[Math.max(1, selectors)];
+        for (int i = 0; i < loops.length; i++)
+            loops[i] = new SelectorLoop();
+    }
+
+    /**
+     * Give the players of the next games a chess clock instead of the
+     * timeout per move.
+     * @param spec the clock, see GameClock.parse()
+     */
+    public synchronized void setClock(String spec) {
+        GameClock.parse(numberOfPlayers, spec);
+        clockSpec = spec;
+    }
+
+    private synchronized GameClock createClock() {
+        return clockSpec != null ? GameClock.parse(numberOfPlayers, clockSpec)
+                : GameClock.perMove(numberOfPlayers, timeout);
+    }
+
+    private Board createBoard() throws Exception {
+        Class<?> cl = Class.forName(boardClass);
+        return (Board) cl.getConstructor().newInstance();
+    }
+
+    /**
+     * Bind the server socket, so that getPort() is known, without serving
+     * any client yet. Called by run() if needed.
+     */
+    public synchronized void bind() throws IOException {
+        if (serverChannel != null) return;
+        hostname = InetAddress.getLocalHost().getCanonicalHostName();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+    }
+
+    /** @return the port the server listens on, once bound */
+    public int getPort() {
+        return serverChannel == null ? port : serverChannel.socket().getLocalPort();
+    }
+
+    public int getRunningGames() { return runningGames.get(); }
+
+    public int getFinishedGames() { return finishedGames.get(); }
+
+    /**
+     * Serve clients until stop() is called. The first selector runs in the
+     * calling thread, and also accepts the connections.
+     */
+    public void run() {
+        try {
+            bind();
+            serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            System.err.println("Failed to open server socket:");
+            e.printStackTrace();
+            return;
+        }
+        System.out.println("Server started. Waiting for incoming connections on " +
+                hostname + ":" + getPort() + " ...");
+        for (int i = 1; i < loops.length; i++) {
+            Thread t = new Thread(loops[i], "NioServer-selector-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        loops[0].run();
+    }
+
+    /** Stop accepting connections and serving clients. Running games are
+     * abandoned. */
+    public void stop() {
+        stopped = true;
+        for (int i = 0; i < loops.length; i++)
+            loops[i].selector.wakeup();
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectorLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                loop.add(new Connection(loop, channel));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to accept connection: " + e);
+        }
+    }
+
+    /** Put a client in the lobby, and start a game if there are enough. */
+    private void join(Connection c) {
+        Connection[] players = null;
+        synchronized (lobby) {
+            lobby.add(c);
+            if (lobby.size() >= numberOfPlayers) {
+                players = new Connection[numberOfPlayers];
+                for (int i = 0; i < players.length; i++)
+                    players[i] = lobby.poll();
+            }
+        }
+        if (players != null) {
+            Board board;
+            try {
+                board = createBoard();
+            } catch (Exception e) {
+                // The class was loaded once already, this should not happen
+                System.err.println("Failed to create board: " + e);
+                for (int i = 0; i < players.length; i++)
+                    players[i].close();
+                return;
+            }
+            new Game(board, players).start();
+        }
+    }
+
+    private void leave(Connection c) {
+        synchronized (lobby) {
+            lobby.remove(c);
+        }
+    }
+
+    /** One selector and the connections registered with it. */
+    private class SelectorLoop implements Runnable {
+        final Selector selector;
+        // Work for the selector thread, from other threads
+        private final ConcurrentLinkedQueue<Connection> added = new ConcurrentLinkedQueue<Connection>();
+
+        SelectorLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        void add(Connection c) {
+            added.add(c);
+            selector.wakeup();
+        }
+
+        public void run() {
+            try {
+                while (!stopped) {
+                    selector.select();
+                    Connection c;
+                    while ((c = added.poll()) != null) c.register(selector);
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Connection conn = (Connection) key.attachment();
+                        if (key.isWritable()) conn.flush();
+                        if (key.isValid() && key.isReadable()) conn.read();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Selector failed:");
+                e.printStackTrace();
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection)
+                        ((Connection) key.attachment()).closeNow();
+                }
+                try { selector.close(); } catch (IOException e) {}
+                if (this == loops[0] && serverChannel != null)
+                    try { serverChannel.close(); } catch (IOException e) {}
+            }
+        }
+    }
+
+    /** Communicates with one client. */
+    private class Connection {
+        private final SelectorLoop loop;
+        private final SocketChannel channel;
+        private final String hostName;
+        private SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final StringBuilder line = new StringBuilder();
+        // Shared vars: synchronize on this object
+        private final ArrayDeque<ByteBuffer> writes = new ArrayDeque<ByteBuffer>();
+        private boolean closing = false;
+        private boolean closed = false;
+
+        private String name;
+        // Set once the game starts
+        private volatile Game game;
+        private int playerID;
+
+        Connection(SelectorLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            InetSocketAddress address = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+            // No reverse lookup, it would block the selector
+            this.hostName = address == null ? "unknown" : address.getAddress().getHostAddress();
+        }
+
+        synchronized void register(Selector selector) {
+            if (closed) return;
+            try {
+                key = channel.register(selector, SelectionKey.OP_READ, this);
+                if (!writes.isEmpty()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                closeNow();
+            }
+        }
+
+        String getName() { return name; }
+
+        String getHostName() { return hostName; }
+
+        /** Read what is available and process the complete lines. */
+        void read() {
+            int n;
+            try {
+                n = channel.read(readBuffer);
+            } catch (IOException e) {
+                disconnected(e.toString());
+                return;
+            }
+            if (n < 0) {
+                disconnected("connection closed");
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                char ch = (char) (readBuffer.get() & 0xff);
+                if (ch == '\n') {
+                    int len = line.length();
+                    if (len > 0 && line.charAt(len - 1) == '\r') line.setLength(len - 1);
+                    String str = line.toString();
+                    line.setLength(0);
+                    processLine(str);
+                } else if (line.length() < MAX_LINE_LENGTH) {
+                    line.append(ch);
+                } else {
+                    readBuffer.clear();
+                    disconnected("line too long");
+                    return;
+                }
+            }
+            readBuffer.clear();
+        }
+
+        private void processLine(String str) {
+            if (Server.DBGNET)
+                System.out.println(hostName + "> " + str);
+            Game g = game;
+            if (g != null) {
+                g.processMessage(str, this);
+            } else if (name == null && str.startsWith("START")) {
+                name = str.substring(5).trim();
+                join(this);
+            } else {
+                System.err.println("Ignoring message from " + hostName +
+                        " waiting for a game: " + str);
+            }
+        }
+
+        private void disconnected(String why) {
+            closeNow();
+            Game g = game;
+            if (g != null) g.connectionError(this, why);
+            else leave(this);
+        }
+
+        /** Send a string to this client. */
+        synchronized void send(String msg) {
+            if (closed || closing) return;
+            if (Server.DBGNET)
+                System.out.println(hostName + "< " + msg);
+            ByteBuffer buf = ByteBuffer.wrap((msg + "\n").getBytes(StandardCharsets.ISO_8859_1));
+            if (writes.isEmpty()) {
+                try {
+                    channel.write(buf);
+                } catch (IOException e) {
+                    closeNow();
+                    return;
+                }
+                if (!buf.hasRemaining()) return;
+            }
+            writes.add(buf);
+            if (key != null && key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                loop.selector.wakeup();
+            }
+        }
+
+        /** Write what the socket takes of the pending messages. */
+        synchronized void flush() {
+            try {
+                while (!writes.isEmpty()) {
+                    ByteBuffer buf = writes.peek();
+                    channel.write(buf);
+                    if (buf.hasRemaining()) return;
+                    writes.poll();
+                }
+            } catch (IOException e) {
+                closeNow();
+                return;
+            }
+            if (closing) closeNow();
+            else if (key.isValid()) key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /** Close the connection once the pending messages are sent. */
+        synchronized void close() {
+            closing = true;
+            if (writes.isEmpty()) closeNow();
+        }
+
+        synchronized void closeNow() {
+            if (closed) return;
+            closed = true;
+            writes.clear();
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close client socket: " + e);
+            }
+        }
+    }
+
+    /** One game between clients from the lobby. */
+    private class Game {
+        private final Board board;
+        private final Connection[] players;
+        private final GameClock clock = createClock();
+        private GameLog gameLog;
+        private TimeoutService.Timeout timeoutTask;
+        // Counts the move requests, so that a late timeout can be ignored
+        private int request = 0;
+        private boolean ended = false;
+
+        Game(Board board, Connection[] players) {
+            this.board = board;
+            this.players = players;
+        }
+
+        synchronized void start() {
+            runningGames.incrementAndGet();
+            for (int i = 0; i < players.length; i++) {
+                players[i].playerID = i;
+                players[i].game = this;
+            }
+            try {
+                gameLog = GameLog.create(logDir);
+                gameLog.writeHeader(hostname, getPort(), board, timeout);
+                if (clock.isChessClock())
+                    gameLog.comment("Clock: " + clock);
+                for (int i = 0; i < players.length; i++) {
+                    gameLog.comment("Player " + (i + 1) + ": " +
+                            board.getNameForID(i) + ", '" +
+                            players[i].getName() + "', running on " +
+                            players[i].getHostName());
+                }
+                for (int i = 0; i < players.length; i++) {
+                    String msg = "START " + board.getNameForID(i) + " " + players[i].getName();
+                    log(msg);
+                    players[i].send(msg);
+                }
+                requestMove();
+            } catch (Exception e) {
+                System.err.println("Exception starting game.");
+                e.printStackTrace();
+                endGame("SERVER ERROR");
+            }
+        }
+
+        synchronized void processMessage(String inputLine, Connection c) {
+            if (ended) return;
+            if (c.playerID != board.getTurn()) {
+                System.err.println("Ignoring out of turn message from " +
+                        board.getNameForID(c.playerID) + ": " + inputLine);
+                return;
+            }
+            Move m;
+            try {
+                m = board.parseMove(inputLine);
+            } catch (Exception e) {
+                System.err.println("Ignoring unparseable move from " +
+                        c.getName() + ": " + inputLine);
+                return;
+            }
+            play(m, c.playerID);
+        }
+
+        /** Play a move, then request the next one. */
+        private void play(Move m, int playerID) {
+            cancelTimeout();
+            try {
+                Object o = board.filterMove(m);
+                Move[] ms = o instanceof Move ? new Move[] {(Move) o} : (Move[]) o;
+                for (int i = 0; i < ms.length; i++) {
+                    m = ms[i];
+                    board.move(m);
+                    broadcast(m);
+                }
+                clock.stop(board.getTurn() != playerID);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error executing move: " + m.toPrettyString());
+                forceLoser(playerID);
+                endGame("ILLEGAL MOVE: " + m.toPrettyString());
+                return;
+            }
+            if (board.getWinner() != Board.NOBODY)
+                endGame("");
+            else
+                requestMove();
+        }
+
+        /** Send the PLAY message to the player to move and start the timer,
+         * or play the board's move. */
+        private void requestMove() {
+            final int playerID = board.getTurn();
+            if (playerID == Board.BOARD) {
+                // Pass the move as if coming over the network
+                Move m = board.getBoardMove();
+                play(board.parseMove(m.toTransportable()), Board.BOARD);
+                return;
+            }
+            players[playerID].send("PLAY " + board.getNameForID(playerID));
+            final int current = ++request;
+            timeoutTask = timeouts.schedule(new Runnable() {
+                public void run() { timeOut(current); }
+            }, clock.start(playerID));
+        }
+
+        private void cancelTimeout() {
+            if (timeoutTask != null) timeoutTask.cancel();
+            timeoutTask = null;
+        }
+
+        synchronized void timeOut(int current) {
+            if (ended || current != request) return;
+            forceLoser(board.getTurn());
+            endGame("TIMEOUT " + board.getNameForID(board.getTurn()));
+        }
+
+        synchronized void connectionError(Connection c, String why) {
+            if (ended) return;
+            System.err.println("Connection error for " +
+                    board.getNameForID(c.playerID) + " : " + why);
+            forceLoser(c.playerID);
+            endGame("DISCONNECTION " + board.getNameForID(c.playerID));
+        }
+
+        private void endGame(String reason) {
+            if (ended) return;
+            ended = true;
+            cancelTimeout();
+            String msg = "GAMEOVER " + reason;
+            broadcast(msg);
+            switch (board.getWinner()) {
+            case Board.DRAW: msg = "DRAW"; break;
+            case Board.NOBODY: msg = "UNDECIDED"; break;
+            default: msg = "WINNER " + board.getNameForID(board.getWinner());
+            }
+            broadcast(msg);
+            for (int i = 0; i < players.length; i++)
+                players[i].close();
+            if (gameLog != null) {
+                gameLog.close();
+                String[] names = new String[players.length];
+                for (int i = 0; i < players.length; i++)
+                    names[i] = players[i].getName();
+                gameLog.appendOutcome(board, names, msg, reason);
+            }
+            runningGames.decrementAndGet();
+            finishedGames.incrementAndGet();
+        }
+
+        private void log(String str) {
+            if (!quiet) System.out.println("% " + (gameLog == null ? "" : gameLog.getGameID() + " ") + str);
+            if (gameLog != null) gameLog.println(str);
+        }
+
+        private void broadcast(String str) {
+            log(str);
+            for (int i = 0; i < players.length; i++)
+                players[i].send(str);
+        }
+
+        /** Send move m to the players identified by m.getReceivers() */
+        private void broadcast(Move m) {
+            String str = m.toTransportable();
+            int[] rec = m.getReceivers();
+            if (rec == null) {
+                broadcast(str);
+            } else {
+                log(str);
+                for (int i = 0; i < rec.length; i++)
+                    players[rec[i]].send(str);
+            }
+        }
+
+        private void forceLoser(int c) {
+            if (c == Board.BOARD)
+                board.forceWinner(Board.DRAW);
+            else
+                board.forceWinner((CCBoard.getTeamIndex(c) + 1) % 2);
+        }
+    }
+}
@@ -4,16 +4,12 @@ import halma.CCBoard;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.Vector;
 import java.awt.EventQueue;
 
@@ -63,25 +59,30 @@ public class Server implements Runnable {
     
     public static final String LOG_DIR = "logs";
     protected static final String OUTCOME_FILE = "outcomes.txt";
-    protected static final String LOG_PREFIX = "game";
-    protected static final String LOG_SUFFIX = ".log";
+    // Holds the last game ID given out
+    protected static final String ID_FILE = "gameid";
+    public static final String LOG_PREFIX = "game";
+    public static final String LOG_SUFFIX = ".log";
     
     // Command line parameters
     private static int cmdArgPort = DEFAULT_PORT;
     private static int cmdArgTimeout = DEFAULT_TIMEOUT;
     private static boolean cmdArgQuiet = true;
+    private static String cmdArgClock = null;
 
     // Parameters
     private int port = DEFAULT_PORT;
     private int timeout = DEFAULT_TIMEOUT;
+    private GameClock clock;
     private boolean quiet = false;
     
     // Files, sockets and threads
     final private ClientHandler players[];
     // A fake client handler for the board, if it wants to play moves
     private ClientHandler boardClientHandler = new ClientHandler( Board.BOARD, this );
-    private Timer timer= new Timer();
-    private TimerTask timeoutTask;
+    private TimeoutService.Timeout timeoutTask;
+    // Changes with each cancelled timeout, so that a late one can be ignored
+    private int moveRequest = 0;
     private String hostname = "localhost";
     private ServerSocket svrSock;
     
@@ -95,8 +96,7 @@ public class Server implements Runnable {
     
     // Logging stuff
     private File logDir = null;
-    private PrintStream logOut = null;
-    private String logfilename;
+    private GameLog gameLog = null;
     private int gameID = -1;
     // This is a history, if the game wasn't started from scratch
     private Move[] history = null;
@@ -104,13 +104,17 @@ public class Server implements Runnable {
     
     private static void printUsage() {
         System.err.println( 
-                "\nUsage: java boardgame.Server [-p port] [-ng] [-q] [-t n] [-b class]\n" + 
+                "\nUsage: java boardgame.Server [-p port] [-ng] [-q] [-t n] [-b class] [-c bank+inc] [-k] [-vt]\n" + 
                 "  Where '-p port' sets the port to listen on. (default="+DEFAULT_PORT+")\n" +
                 "        '-ng' indicates not to show a GUI.\n" +
                 "        '-q' indicates not to dump log to console.\n" +
                 "        '-t n' sets the timeout. (default="+DEFAULT_TIMEOUT+")\n" +
+                "        '-c bank+inc' gives each player a chess clock instead, with a bank\n" +
+                "              of time for the game and an increment per turn, in ms.\n" +
                 "        '-b class' determines the game to be run. (default="+DEFAULT_BOARDCLASS+")\n" +
-                "        '-k' indicates to start a new server once a game is running" +
+                "        '-k' indicates to start a new server once a game is running\n" +
+                "        '-vt' indicates to run the client handlers on virtual threads\n" +
+                "              (Java 21 and later, see boardgame.Threads)\n" +
                 "  e.g.\n" +
                 "    java boardgame.Server -p " + DEFAULT_PORT + " -t " + DEFAULT_TIMEOUT + 
                 " -b " + DEFAULT_BOARDCLASS + "\n" +
@@ -128,9 +132,11 @@ public class Server implements Runnable {
                 if( args[i].equals("-p") ) cmdArgPort = Integer.parseInt(args[++i]);
                 else if( args[i].equals("-ng") ) argGui = false;
                 else if( args[i].equals("-t") ) cmdArgTimeout = Integer.parseInt(args[++i]);
+                else if( args[i].equals("-c") ) cmdArgClock = args[++i];
                 else if( args[i].equals("-b") ) argClass = args[++i];
                 else if( args[i].equals("-q") ) cmdArgQuiet = true;
                 else if( args[i].equals("-k") ) argKeep = true;
+                else if( args[i].equals("-vt") ) Threads.setMode( Threads.VIRTUAL );
                 else { printUsage(); return; }
             }
         } catch (Exception e) { printUsage(); return; }
@@ -158,6 +164,8 @@ public class Server implements Runnable {
                 if( ss == null ) ss = new ServerSocket(cmdArgPort);
                 // Create the server
                 svr = new Server( b, argGui, cmdArgQuiet, ss, cmdArgTimeout );
+                if( cmdArgClock != null )
+                    svr.setClock( GameClock.parse( b.getNumberOfPlayers(), cmdArgClock ) );
                 // Launch the server
                 svr.run();
                 // Add it to the list of running servers
@@ -171,6 +179,13 @@ public class Server implements Runnable {
             } 
         } while( argKeep );
         if( ss != null ) try { ss.close(); } catch(Exception e) {}
+        // The handlers run on daemon threads, wait for the game to end
+        try {
+            while( svr != null ) {
+                synchronized(svr) { if( svr.gameEnded ) break; }
+                Thread.sleep(500);
+            }
+        } catch (InterruptedException e) {}
     }
     
     /** Create a server which accepts two connections from the 
@@ -191,6 +206,7 @@ public class Server implements Runnable {
         this.board = b;
         this.port = svPort;
         this.timeout = to;
+        this.clock = GameClock.perMove( b.getNumberOfPlayers(), to );
         this.quiet = qt;
         this.svrSock = null;
         if( createGUI ) this.gui = new ServerGUI(this);
@@ -201,6 +217,12 @@ public class Server implements Runnable {
         return board;
     }
     
+    /** Use a chess clock instead of the timeout per move. Must be called
+     * before the game starts. */
+    public synchronized void setClock( GameClock c ) {
+        this.clock = c;
+    }
+
     // Allow the GUI to provide a history. 
     synchronized void setHistory( Move[] moves ) {
         this.history = moves;
@@ -260,7 +282,7 @@ public class Server implements Runnable {
                 Socket client = ss.accept();
                 players[accepted] = 
                     new ClientHandler( client, accepted, this); 
-                new Thread(players[accepted]).start();
+                Threads.getExecutor().execute(players[accepted]);
                 System.out.println( "Accepted connection from " +
                         client.getInetAddress().getHostName() + ": " + 
                         board.getNameForID(players[accepted].getPlayerID()));
@@ -370,6 +392,7 @@ public class Server implements Runnable {
 		    if( gui != null ) new RUpdated( board, m);//gui.boardUpdated( m );
 		    broadcast(m);
 		}
+		clock.stop( board.getTurn() != h.getPlayerID() );
                 if( DUMPBOARD )
 		    System.out.println( board.toString() );
                 if( board.getWinner() != Board.NOBODY )
@@ -385,35 +408,15 @@ public class Server implements Runnable {
     }
 
     private void initLogFile() throws Exception {
-	// Find an unused filename
-	File[] files = logDir.listFiles();
-	if( files == null ) 
-	    throw new IOException( "Log directory doesn't seem to exist." );
-	int max = 0, plen = LOG_PREFIX.length(), slen = LOG_SUFFIX.length();
-	for( int i = 0; i < files.length; i++ ) {
-	    if(files[i].getName().startsWith(LOG_PREFIX) && 
-	       files[i].getName().endsWith(LOG_SUFFIX) ) {
-		int v = Integer.parseInt( files[i].getName().substring(plen,
-				        files[i].getName().length() - slen));
-		if( v > max ) max = v;  } }
-	gameID = max + 1;
-	String name = "000000" + Integer.toString( gameID );
-	logfilename = LOG_PREFIX + name.substring(name.length()-5) + 
-	    LOG_SUFFIX;
-	// Open the log and print some header stuff
-	File logFile = new File(logDir, logfilename);
-	logOut = new PrintStream( new FileOutputStream( logFile ) );
-	logOut.println("# Server version " + VERSION + " running on " + 
-		       hostname + ":" + port );
-	logOut.println("# Game ID: " + gameID );
-	logOut.println("# Board class: " + 
-		       board.getClass().getName() );
-	logOut.println("# Timeout: " + timeout );
-	logOut.println("# Date: " + (new Date()).toString() );
+	gameLog = GameLog.create( logDir );
+	gameID = gameLog.getGameID();
+	gameLog.writeHeader( hostname, port, board, timeout );
+	if( clock.isChessClock() )
+	    gameLog.comment( "Clock: " + clock );
 	if( history!=null )
-	    logOut.println( "# Starting at move " + (history.length + 1) );
+	    gameLog.comment( "Starting at move " + (history.length + 1) );
 	for( int i = 0; i < players.length; i++ ) {
-	    logOut.println("# Player " + (i+1) +": " + 
+	    gameLog.comment("Player " + (i+1) +": " + 
 			   board.getNameForID(players[i].getPlayerID()) + ", '" +
 			   players[i].getName() + "', running on " +
 			   players[i].getHostName() );
@@ -430,7 +433,8 @@ public class Server implements Runnable {
     }
     
     /** Callback for timeout timer. */
-    private synchronized void timeOut() {
+    private synchronized void timeOut( int request ) {
+        if( gameEnded || request != moveRequest ) return;
         forceLoser( board.getTurn() );
         endGame( "TIMEOUT " + board.getNameForID(board.getTurn()) ); 
     }
@@ -445,7 +449,7 @@ public class Server implements Runnable {
                 try {svrSock.close();} catch (IOException e) {}
         }
         // Make sure we get rid of the timer
-        if(timer != null) { timer.cancel(); timer = null; }
+        cancelTimeout();
         // Log reason for ending the game
         String msg = "GAMEOVER " + reason;
         broadcast( msg );
@@ -460,34 +464,14 @@ public class Server implements Runnable {
         // Close sockets
         for( int i = 0; i < players.length; i++ )
             if( players[i] != null) players[i].closeConnection();
-        // Close the log file
-        if( logOut != null ) {
-            logOut.println( "# Game ended: " + (new Date()).toString() );
-            logOut.close();
-            // Append the outcome to the outcome file
-            try {
-                PrintStream out = new PrintStream( new FileOutputStream(
-                        new File(LOG_DIR, OUTCOME_FILE), true) );
-                out.print( Integer.toString(gameID) + '\t' );
-                int win = -1;
-                for( int i = 0; i<players.length; i++ ) {
-                    if( players[i] == null)
-                        out.print( "NOBODY\t" );
-                    else {
-                        out.print( players[i].getName() + '\t');
-                        if( board.getWinner() == players[i].getPlayerID() ) win = i;
-                    }
-                }
-		out.print( (win > -1 ? board.getNameForID( players[win].getPlayerID() ) : msg ) + '\t' );
-                out.print( (win > -1 ? players[win].getName() : "NOBODY") + '\t');
-                out.print( Integer.toString(board.getTurnsPlayed()) + '\t' );
-                out.print( logfilename + '\t' );
-		out.println( reason );
-                out.close();
-            } catch (Exception e ) {
-                System.err.println( "Failed to append outcome to '" + OUTCOME_FILE + "': " );
-                e.printStackTrace();
-            }}
+        // Close the log file and append the outcome to the outcome file
+        if( gameLog != null ) {
+            gameLog.close();
+            String names[] = new String[players.length];
+            for( int i = 0; i < players.length; i++ )
+                if( players[i] != null ) names[i] = players[i].getName();
+            gameLog.appendOutcome( board, names, msg, reason );
+        }
     }
     
     /** send the PLAY message to the client, and start the timer */
@@ -502,7 +486,7 @@ public class Server implements Runnable {
 	    for( int i = 0; i < players.length; i++ ) {
 		if( players[i].getPlayerID() == playerID ) {
 		    players[i].send("PLAY " + board.getNameForID(playerID));
-		    resetTimer();
+		    resetTimer( playerID );
 		    return;
 		}
 	    }
@@ -510,22 +494,25 @@ public class Server implements Runnable {
 	}
     }
     
-    private void resetTimer() {
+    private void resetTimer( int playerID ) {
         cancelTimeout(); 
-        timeoutTask = new TimerTask() {
-            public void run() { timeOut(); } };
-        timer.schedule( timeoutTask, timeout );
+        final int request = moveRequest;
+        timeoutTask = TimeoutService.getShared().schedule( new Runnable() {
+            public void run() { timeOut( request ); } },
+            clock.start( playerID ) );
     }
     
     // So the GUI can cancel the timeout
     synchronized void cancelTimeout() {
         if( timeoutTask != null ) timeoutTask.cancel();
         timeoutTask = null;
+        // In case it is already running
+        moveRequest++;
     }
     
     private void log( String str ) {
         if( !quiet ) System.out.println( "% " + str );
-        if( logOut != null ) logOut.println( str );
+        if( gameLog != null ) gameLog.println( str );
     }
     
     /** Send string to all players */
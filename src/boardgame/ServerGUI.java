@@ -4,10 +4,8 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.util.Vector;
+import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.AbstractListModel;
@@ -57,8 +55,7 @@ implements BoardPanel.BoardPanelListener  {
     
     private Board board; // Most recently updated board
     private int currentBoard = -1; // Displayed board index
-    private Vector moveHistory = new Vector();
-    private Vector boardHistory = new Vector();
+    private BoardHistory history = new BoardHistory(); // Moves and boards
     private String outcome = null; // The outcome message from the server
     
     // Menu actions
@@ -135,7 +132,7 @@ implements BoardPanel.BoardPanelListener  {
             public void actionPerformed(ActionEvent arg0) { setCurrentBoard(currentBoard+1); } };
         
         lastAction = new AbstractAction("Last move", new ImageIcon("image/last.png") ) {
-            public void actionPerformed(ActionEvent arg0) { setCurrentBoard(boardHistory.size()-1); } };
+            public void actionPerformed(ActionEvent arg0) { setCurrentBoard(history.size()-1); } };
             
         openAction = new AbstractAction("Open log...") {
             public void actionPerformed(ActionEvent ev) {
@@ -206,18 +203,15 @@ implements BoardPanel.BoardPanelListener  {
         fromHereAction = new AbstractAction("Launch server from current position") {
             public void actionPerformed(ActionEvent arg0) {
                 try {
-                    Board bd = (Board)boardHistory.get(currentBoard);
+                    Board bd = history.getBoard(currentBoard);
                     int currentMove = currentBoard;
                     // The current move might be the special 'null' at the
                     // end of the list used to display the outcome
-                    if( currentMove == moveHistory.size()-1 &&
-                            moveHistory.get(currentMove) == null) currentMove--;
+                    if( currentMove == history.size()-1 &&
+                            history.getMove(currentMove) == null) currentMove--;
                     if( bd == null || currentMove < 1 || bd.getWinner() != Board.NOBODY )
                         throw new IllegalStateException( "Can't start game from move " + currentMove );
-                    Object[] h = moveHistory.subList(1,
-                            currentMove+1).toArray();
-                    Move[] hist = new Move[h.length];
-                    for( int i = 0 ; i < h.length; i++ ) hist[i] = (Move) h[i];
+                    Move[] hist = history.getMoves(1, currentMove+1);
                     clearData();;
                     java.lang.reflect.Constructor co = 
 			bd.getClass().getConstructor(new Class[0]);
@@ -272,7 +266,7 @@ implements BoardPanel.BoardPanelListener  {
         moveList.addListSelectionListener(new ListSelectionListener() {
             public void valueChanged(ListSelectionEvent arg0) {
                     int idx = moveList.getSelectedIndex();
-                    if( idx >= 0 && idx < moveHistory.size() &&
+                    if( idx >= 0 && idx < history.size() &&
                             idx != currentBoard )
                     setCurrentBoard( idx ); 
             }});
@@ -293,7 +287,7 @@ implements BoardPanel.BoardPanelListener  {
         }
         // If a move was requested, but we're changing from the
         // last board, cancel the request
-        if( userMoveRequested && index != boardHistory.size()-1 ) {
+        if( userMoveRequested && index != history.size()-1 ) {
             boardPanel.cancelMoveRequest();
             userMoveRequested = false;
         }
@@ -304,11 +298,8 @@ implements BoardPanel.BoardPanelListener  {
                 boardPanel.setCurrentBoard(null);
                 fromHereAction.setEnabled(false);
             } else {
-                Board b = (Board)boardHistory.get(index);
-                // Might be the last board, in which case there is no 
-                // matching board in the list
-                if( b == null ) 
-                    b = (Board) boardHistory.get(boardHistory.size()-1);
+                // Rebuilt from the nearest checkpoint
+                Board b = history.getBoard(index);
                 boardPanel.setCurrentBoard( b  );
                 fromHereAction.setEnabled(b != null && 
                         b.getWinner() == Board.NOBODY &&
@@ -316,11 +307,11 @@ implements BoardPanel.BoardPanelListener  {
             }
             backAction.setEnabled(index>0);
             firstAction.setEnabled(index>0);
-            fwdAction.setEnabled(index<boardHistory.size()-1);
-            lastAction.setEnabled(index<boardHistory.size()-1);
+            fwdAction.setEnabled(index<history.size()-1);
+            lastAction.setEnabled(index<history.size()-1);
         }
         // If we need a move, and this is the last board, request it
-        if( userMoveNeeded && index == boardHistory.size() - 1 && 
+        if( userMoveNeeded && index == history.size() - 1 && 
                 !userMoveRequested ) {
             boardPanel.requestMove( this );
             userMoveRequested = true;
@@ -330,9 +321,8 @@ implements BoardPanel.BoardPanelListener  {
     /** Clears all the move/board data */
     private void clearData() {
         // How many moves in the list
-        int max = moveHistory.size() - 1;
-        this.boardHistory.clear();
-        this.moveHistory.clear();
+        int max = history.size() - 1;
+        this.history.clear();
         // Update the list view
         if( max >= 0 )
             moveListModel.cleared(max);
@@ -347,16 +337,18 @@ implements BoardPanel.BoardPanelListener  {
 	the server were running. */
     private void loadLogFile( String file ) throws Exception {
         try {
-            BufferedReader in = new BufferedReader( new FileReader( file ));
+            // Only complete lines, the log may have been cut short
+            List<String> lines = GameLog.readLines( file );
+            int next = 0;
             this.clearData();
             // Find the board class line
             String line;
-            while( !(line = in.readLine()).startsWith("# Game ID:") ) 
+            while( !(line = headerLine(lines, next++)).startsWith("# Game ID:") ) 
                 if( !line.startsWith("#") ) 
                     throw new IllegalArgumentException( 
                             "No 'Game ID:' line found in header.");
             int gameID = Integer.parseInt(line.substring(10).trim());
-            while( !(line = in.readLine()).startsWith("# Board class:") ) 
+            while( !(line = headerLine(lines, next++)).startsWith("# Board class:") ) 
                 if( !line.startsWith("#") ) 
                     throw new IllegalArgumentException( 
                             "No 'Board class:' line found in header.");
@@ -367,9 +359,10 @@ implements BoardPanel.BoardPanelListener  {
             Board b = (Board) co.newInstance(new Object[0]);
             // Add the moves as if receiving them from the server
             String[] players = new String[b.getNumberOfPlayers()];
-            boolean gameOver = false;
+            boolean gameOver = false, ended = false;
             int pcount = 0;
-            while( (line = in.readLine()) != null ) {
+            while( next < lines.size() ) {
+                line = lines.get(next++);
                 if( line.startsWith("#") ) {
                     // Skip rest of header
                 } else if( line.startsWith("START") ) {
@@ -386,16 +379,24 @@ implements BoardPanel.BoardPanelListener  {
                     if( !gameOver )
                         System.err.println( "Warning: 'GAMEOVER' line missing" );
                     this.gameEnded(line);
+                    ended = true;
                     break;
                 } else {
                     if( pcount < players.length  )
                         throw new IllegalArgumentException( "Missing 'START' message(s)." );
                     Move m = b.parseMove(line);
                     b.move(m);
-                    boardUpdated((Board)b.clone(), m);
+                    // The history keeps the move, not a copy of the board
+                    boardUpdated(b, m);
                 }
             }
-            in.close();
+            if( !ended ) {
+                if( pcount < players.length  )
+                    throw new IllegalArgumentException( "Missing 'START' message(s)." );
+                // Show the moves there are
+                System.err.println( "Warning: the log ends before the game, it may have been cut short" );
+                this.gameEnded( "UNDECIDED (log cut short)" );
+            }
             this.setCurrentBoard(0);
         } catch (Exception e) {
             this.clearData();
@@ -404,6 +405,12 @@ implements BoardPanel.BoardPanelListener  {
             throw e;
         }
     }
+
+    private static String headerLine( List<String> lines, int i ) {
+        if( i >= lines.size() )
+            throw new IllegalArgumentException( "The log ends in its header." );
+        return lines.get(i);
+    }
     
     /** Called by server when waiting for connection */
     void waitingForConnection( String playerID ) {
@@ -438,12 +445,11 @@ implements BoardPanel.BoardPanelListener  {
     
     /** Called by server on update */
     void boardUpdated( Board b, Move m ) {
-        moveHistory.add(m); this.moveListModel.addedMove();
+        history.add( b, m ); this.moveListModel.addedMove();
         board = b;
-        boardHistory.add( b );
         // If displaying the last board, update to the current
-        if( currentBoard == boardHistory.size()-2 )
-            setCurrentBoard(boardHistory.size()-1);
+        if( currentBoard == history.size()-2 )
+            setCurrentBoard(history.size()-1);
         if( board != null ) // Might be calling from gameEnded...
         statusLabel.setText( "Game in progress, " + 
                 board.getNameForID( board.getTurn() ) + " to play." );
@@ -482,9 +488,7 @@ implements BoardPanel.BoardPanelListener  {
         for( int i = 0; i < serverActions.length; i++ )
             serverActions[i].setEnabled(arg);
 	if( currentBoard >= 0 ) {
-	    Board b = (Board)boardHistory.get(currentBoard);
-	    if( b == null ) 
-		b = (Board) boardHistory.get(boardHistory.size()-1);
+	    Board b = history.getBoard(currentBoard);
 	    fromHereAction.setEnabled(b != null && 
 				      b.getWinner() == Board.NOBODY &&
 				      b.getTurnsPlayed() > 0 &&
@@ -497,8 +501,8 @@ implements BoardPanel.BoardPanelListener  {
         // Indicate that we should get a move from the user
         this.userMoveNeeded = true;
         // Move to the last board
-        this.setCurrentBoard( boardHistory.size() - 1 );
-        Board bb = (Board) boardHistory.get(currentBoard);
+        this.setCurrentBoard( history.size() - 1 );
+        Board bb = history.getBoard(currentBoard);
         statusLabel.setText( "Waiting for user to play as " +
                 bb.getNameForID(bb.getTurn()) + "...");
     }
@@ -638,15 +642,15 @@ implements BoardPanel.BoardPanelListener  {
 
     // Custom move ListModel
     private class MoveListModel extends AbstractListModel {
-        public int getSize() { return moveHistory.size();}
+        public int getSize() { return history.size();}
         public Object getElementAt(int arg0) { 
-            if( arg0 == 0 ) return outcome != null && moveHistory.size() == 1 ? 
+            if( arg0 == 0 ) return outcome != null && history.size() == 1 ? 
                     outcome : "START";
-            if( arg0 == moveHistory.size()-1 && outcome != null ) return outcome;
-            return (arg0) + ". " + ((Move)moveHistory.get(arg0)).toPrettyString();
+            if( arg0 == history.size()-1 && outcome != null ) return outcome;
+            return (arg0) + ". " + history.getMove(arg0).toPrettyString();
         }
         void addedMove() {
-            int i  = moveHistory.size();
+            int i  = history.size();
             this.fireIntervalAdded(this,i,i);
         }
         void cleared(int maxIndex) { this.fireIntervalRemoved(this,0,maxIndex); }
@@ -0,0 +1,110 @@
+package boardgame;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads running the server's client handlers and timeouts, and the
+ * loops of clients run in the same JVM. The timeouts themselves are kept by
+ * the TimeoutService.
+ *
+ * In the platform mode, the default, each task gets a platform thread from
+ * a cached pool. In the virtual mode it gets a virtual thread, so that
+ * thousands of connections blocked in readLine() cost little memory and no
+ * native threads. Virtual threads need Java 21, they are looked up by
+ * reflection so that this still builds and runs on older versions, which
+ * fall back to the platform mode.
+ *
+ * The mode is read from the system property boardgame.threads, "platform"
+ * or "virtual", and may be changed with setMode() before the executor is
+ * first used. An application may also provide its own with setExecutor().
+ *
+ * All threads are daemon threads: whoever starts work on them has to wait
+ * for it, as Server.main() and Client.main() do.
+ */
+public final class Threads {
+    public static final String PROPERTY = "boardgame.threads";
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    private static String mode = System.getProperty(PROPERTY, PLATFORM);
+    private static ExecutorService executor;
+
+    private Threads() {}
+
+    /**
+     * Set the kind of threads of the executor.
+     * @param m PLATFORM or VIRTUAL
+     */
+    public static synchronized void setMode(String m) {
+        if (!PLATFORM.equals(m) && !VIRTUAL.equals(m))
+            throw new IllegalArgumentException("Unknown thread mode: " + m);
+        if (executor != null && !m.equals(mode))
+            throw new IllegalStateException("Executor already created in " + mode + " mode");
+        mode = m;
+    }
+
+    public static synchronized String getMode() { return mode; }
+
+    /** Use the given executor instead of creating one. */
+    public static synchronized void setExecutor(ExecutorService e) {
+        executor = e;
+    }
+
+    /**
+     * @return the shared executor for blocking tasks, such as reading from
+     * a socket
+     */
+    public static synchronized ExecutorService getExecutor() {
+        if (executor == null)
+            executor = newExecutor("boardgame", VIRTUAL.equals(mode));
+        return executor;
+    }
+
+    /** @return whether this JVM has virtual threads */
+    public static boolean isVirtualAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an executor running each task in a new thread, or a cached
+     * platform thread.
+     * @param name the prefix of the thread names
+     * @param virtual whether to use virtual threads, if available
+     */
+    public static ExecutorService newExecutor(String name, boolean virtual) {
+        if (virtual) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class)
+                        .invoke(builder, name + "-", 0L);
+                ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+                Method m = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) m.invoke(null, factory);
+            } catch (Exception e) {
+                System.err.println("Virtual threads are not available, using platform threads: " + e);
+            }
+        }
+        return Executors.newCachedThreadPool(platformThreads(name));
+    }
+
+    private static ThreadFactory platformThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
@@ -0,0 +1,191 @@
+package boardgame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks after a delay, for the move timeouts of many games at once.
+ *
+ * This is a hashed timer wheel: time is cut in ticks, and a timeout is kept
+ * in the bucket of the tick it expires at, modulo the size of the wheel,
+ * along with the number of times the wheel still has to turn before then.
+ * Arming and cancelling a timeout link and unlink it from its bucket, so
+ * both are O(1), and a cancelled timeout is gone at once instead of waiting
+ * in a queue until its deadline. A timeout runs up to one tick late.
+ *
+ * One daemon thread turns the wheel and hands the expired tasks over to an
+ * executor, by default Threads.getExecutor(), so a task waiting for a lock
+ * does not hold up the others. It waits without ticking while there is
+ * nothing to time.
+ */
+public class TimeoutService {
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static TimeoutService shared;
+
+    private final long tickNanos;
+    // The heads of the buckets' circular lists
+    private final Timeout[] wheel;
+    private final int mask;
+    private final Executor executor;
+    private final long startNanos = System.nanoTime();
+
+    // All of the following are guarded by this object's lock
+    // The next tick to process
+    private long tick = 0;
+    private int pending = 0;
+    private Thread worker;
+
+    /** A task waiting to run. */
+    public final class Timeout {
+        private final Runnable task;
+        private long rounds;
+        private Timeout prev, next;
+        private boolean armed;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+            this.prev = this.next = this;
+        }
+
+        /**
+         * Cancel the task, unless it already ran or is running.
+         * @return whether it was cancelled
+         */
+        public boolean cancel() {
+            synchronized (TimeoutService.this) {
+                if (!armed) return false;
+                unlink(this);
+                return true;
+            }
+        }
+
+        /** @return whether the task has not yet run nor been cancelled */
+        public boolean isPending() {
+            synchronized (TimeoutService.this) {
+                return armed;
+            }
+        }
+    }
+
+    /**
+     * @return the service shared by all games in this JVM
+     */
+    public static synchronized TimeoutService getShared() {
+        if (shared == null)
+            shared = new TimeoutService(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, null);
+        return shared;
+    }
+
+    /**
+     * @param tickMillis the length of a tick
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     * @param executor runs the tasks, or null for Threads.getExecutor()
+     */
+    public TimeoutService(long tickMillis, int wheelSize, Executor executor) {
+        if (tickMillis <= 0 || wheelSize <= 0)
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Timeout[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new Timeout(null);
+        this.mask = size - 1;
+        this.executor = executor;
+    }
+
+    /**
+     * Run a task after a delay.
+     * @param task the task
+     * @param delayMillis the delay, at least one tick is waited for
+     * @return the timeout, to cancel it
+     */
+    public synchronized Timeout schedule(Runnable task, long delayMillis) {
+        long now = System.nanoTime() - startNanos;
+        if (pending == 0) {
+            // The wheel stood still, nothing is lost by moving it to now
+            tick = Math.max(tick, now / tickNanos);
+        }
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        long deadline = (now + delayNanos + tickNanos - 1) / tickNanos;
+        if (deadline < tick) deadline = tick;
+
+        Timeout t = new Timeout(task);
+        t.rounds = (deadline - tick) / wheel.length;
+        Timeout head = wheel[(int) (deadline & mask)];
+        t.prev = head.prev;
+        t.next = head;
+        head.prev.next = t;
+        head.prev = t;
+        t.armed = true;
+        pending++;
+
+        if (worker == null) {
+            worker = new Thread(new Runnable() {
+                public void run() { turn(); }
+            }, "boardgame-timeouts");
+            worker.setDaemon(true);
+            worker.start();
+        } else if (pending == 1) {
+            notifyAll();
+        }
+        return t;
+    }
+
+    /** @return the number of timeouts waiting */
+    public synchronized int size() {
+        return pending;
+    }
+
+    private void unlink(Timeout t) {
+        t.prev.next = t.next;
+        t.next.prev = t.prev;
+        t.prev = t.next = t;
+        t.armed = false;
+        pending--;
+    }
+
+    /** The worker's loop: wait for each tick and expire its bucket. */
+    private void turn() {
+        List<Runnable> expired = new ArrayList<Runnable>();
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (pending == 0) wait();
+                    long wait = startNanos + tick * tickNanos - System.nanoTime();
+                    if (wait > 0) {
+                        // Woken up early by a new timeout, or not
+                        TimeUnit.NANOSECONDS.timedWait(this, wait);
+                        continue;
+                    }
+                    Timeout head = wheel[(int) (tick & mask)];
+                    for (Timeout t = head.next; t != head; ) {
+                        Timeout next = t.next;
+                        if (t.rounds == 0) {
+                            unlink(t);
+                            expired.add(t.task);
+                        } else {
+                            t.rounds--;
+                        }
+                        t = next;
+                    }
+                    tick++;
+                }
+                for (int i = 0; i < expired.size(); i++) {
+                    Runnable task = expired.get(i);
+                    try {
+                        (executor != null ? executor : Threads.getExecutor()).execute(task);
+                    } catch (RuntimeException e) {
+                        System.err.println("Failed to run timeout: " + e);
+                    }
+                }
+                expired.clear();
+            }
+        } catch (InterruptedException e) {
+            // Daemon thread, let it go
+        }
+    }
+}
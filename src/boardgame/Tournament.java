@@ -0,0 +1,247 @@
+package boardgame;
+
+import halma.CCBoard;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays many games between player classes in one JVM, several at a time.
+ *
+ * Each game is a Match with new player instances, created with their
+ * public no-argument constructor as by the Client when the game starts.
+ * Every other game the classes swap sides, so both teams play from both
+ * pairs of corners. The outcome of each game is printed as it ends,
+ * followed by a summary.
+ */
+public class Tournament {
+
+    private static void printUsage() {
+        System.err.println(
+            "Usage: java boardgame.Tournament [-n games] [-j threads] [-t timeout] [-o file] [-v]\n" +
+            "           [-b class] PlayerClass0 PlayerClass1 PlayerClass2 PlayerClass3\n" +
+            "  Where '-n games' sets the number of games (default=" + DEFAULT_GAMES + ")\n" +
+            "        '-j threads' sets the number of games played at once (default=number of CPUs)\n" +
+            "        '-t timeout' sets the time per move in ms (default=" + Server.DEFAULT_TIMEOUT + ")\n" +
+            "        '-o file' appends the outcome of each game to a file, tab separated\n" +
+            "        '-v' keeps the output of the players, which is dropped by default\n" +
+            "        '-b class' determines the game to be played (default=" + Server.DEFAULT_BOARDCLASS + ")\n" +
+            "  The players are given in the order of their IDs. In halma, players 0 and 3\n" +
+            "  play against players 1 and 2, e.g.\n" +
+            "    java boardgame.Tournament -n 100 halma.CCMiniMaxPlayer halma.CCRandomPlayer\n" +
+            "        halma.CCRandomPlayer halma.CCMiniMaxPlayer");
+    }
+
+    private static final int DEFAULT_GAMES = 10;
+
+    private final String boardClass;
+    private final String[] playerClasses;
+    private final long timeout;
+    private final int threads;
+
+    private final Map<String, Integer> wins = new LinkedHashMap<String, Integer>();
+    private int draws;
+    private int undecided;
+    private int errors;
+    private long totalTurns;
+    private int played;
+
+    public Tournament(String boardClass, String[] playerClasses, long timeout, int threads) {
+        this.boardClass = boardClass;
+        this.playerClasses = playerClasses;
+        this.timeout = timeout;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) {
+        int games = DEFAULT_GAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long timeout = Server.DEFAULT_TIMEOUT;
+        String outFile = null;
+        boolean verbose = false;
+        String boardClass = Server.DEFAULT_BOARDCLASS;
+        List<String> classes = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-n")) games = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-j")) threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-t")) timeout = Long.parseLong(args[++i]);
+                else if (args[i].equals("-o")) outFile = args[++i];
+                else if (args[i].equals("-v")) verbose = true;
+                else if (args[i].equals("-b")) boardClass = args[++i];
+                else if (args[i].startsWith("-")) throw new IllegalArgumentException(args[i]);
+                else classes.add(args[i]);
+            }
+        } catch (Exception e) {
+            printUsage();
+            return;
+        }
+
+        Tournament tournament = new Tournament(boardClass,
+                classes.toArray(new String[classes.size()]), timeout, threads);
+        PrintStream out = System.out;
+        PrintStream outcomes = null;
+        try {
+            // Check the classes before dropping the output
+            tournament.createPlayers(0);
+            if (outFile != null)
+                outcomes = new PrintStream(new FileOutputStream(outFile, true), true);
+            if (!verbose) {
+                System.setOut(new PrintStream(new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                    }
+                }));
+            }
+            tournament.play(games, out, outcomes);
+        } catch (Exception e) {
+            System.err.println("Tournament failed: " + e);
+            printUsage();
+        } finally {
+            System.setOut(out);
+            if (outcomes != null) outcomes.close();
+        }
+    }
+
+    /**
+     * Play the games and print the outcomes.
+     * @param games the number of games
+     * @param out where to print the outcomes and the summary
+     * @param outcomes where to append the tab separated outcome of each game,
+     * or null
+     */
+    public void play(int games, PrintStream out, PrintStream outcomes) throws Exception {
+        ExecutorService gameExecutor = Executors.newFixedThreadPool(threads, daemonThreads("game"));
+        ExecutorService moveExecutor = Executors.newCachedThreadPool(daemonThreads("move"));
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<Match.Result>> results = new ArrayList<Future<Match.Result>>();
+            for (int g = 0; g < games; g++) {
+                final int game = g;
+                final ExecutorService moves = moveExecutor;
+                // The players are only created once the game starts, as they
+                // may take much memory, like the tables of a search
+                results.add(gameExecutor.submit(new Callable<Match.Result>() {
+                    @Override
+                    public Match.Result call() throws Exception {
+                        return new Match(createBoard(), createPlayers(game), timeout, moves).call();
+                    }
+                }));
+            }
+            for (int g = 0; g < games; g++) {
+                Match.Result result;
+                try {
+                    result = results.get(g).get();
+                } catch (ExecutionException e) {
+                    errors++;
+                    out.println("Game " + g + " failed: " + e.getCause());
+                    continue;
+                } finally {
+                    results.set(g, null);
+                }
+                Player[] players = result.players;
+                record(players, result);
+                String line = g + "\t" + names(players) + result.outcome + "\t"
+                        + winnerNames(players, result.winner) + "\t"
+                        + result.turns + "\t" + result.reason;
+                out.println(line);
+                if (outcomes != null) outcomes.println(line);
+            }
+        } finally {
+            gameExecutor.shutdownNow();
+            moveExecutor.shutdownNow();
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        out.println("Games: " + played + ", errors: " + errors + ", in " + elapsed / 1000 + " s ("
+                + String.format("%.0f", played * 3600000.0 / elapsed) + " games/hour)");
+        for (Map.Entry<String, Integer> e : wins.entrySet())
+            out.println("  " + e.getKey() + ": " + e.getValue() + " wins");
+        out.println("  draws: " + draws + ", undecided: " + undecided
+                + ", average turns: " + (played == 0 ? 0 : totalTurns / played));
+    }
+
+    private void record(Player[] players, Match.Result result) {
+        played++;
+        totalTurns += result.turns;
+        if (result.winner == Board.DRAW) {
+            draws++;
+        } else if (result.winner == Board.NOBODY) {
+            undecided++;
+        } else {
+            String name = winnerNames(players, result.winner);
+            Integer count = wins.get(name);
+            wins.put(name, count == null ? 1 : count + 1);
+        }
+    }
+
+    private static String names(Player[] players) {
+        StringBuilder sb = new StringBuilder();
+        for (Player p : players)
+            sb.append(p.getClass().getName()).append('\t');
+        return sb.toString();
+    }
+
+    /**
+     * @return the classes of the players on the winning team, as in
+     * Server.forceLoser() the winner is a team index
+     */
+    private static String winnerNames(Player[] players, int winner) {
+        if (winner == Board.DRAW || winner == Board.NOBODY) return "NOBODY";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < players.length; i++) {
+            if (CCBoard.getTeamIndex(i) == winner) {
+                if (sb.length() > 0) sb.append(" + ");
+                sb.append(players[i].getClass().getName());
+            }
+        }
+        return sb.toString();
+    }
+
+    private Board createBoard() throws Exception {
+        Class<?> cl = Class.forName(boardClass);
+        return (Board) cl.getConstructor().newInstance();
+    }
+
+    /**
+     * Create the players of a game, the classes swap sides every other game.
+     */
+    private Player[] createPlayers(int game) throws Exception {
+        if (playerClasses.length != 4)
+            throw new IllegalArgumentException("Need four player classes");
+        Player[] players = new Player[playerClasses.length];
+        for (int i = 0; i < players.length; i++) {
+            String cls = playerClasses[game % 2 == 0 ? i : i ^ 1];
+            players[i] = (Player) Class.forName(cls).getConstructor().newInstance();
+        }
+        return players;
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package halma;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+/**
+ * Stores the 16x16 grid as one 256-bit occupancy mask per player, each
+ * mask being 4 longs. Bit (square & 63) of word (square >> 6) is set when
+ * the player has a piece on that square.
+ */
+public class CCBitboardPieceStore implements CCPieceStore {
+
+	private static final int WORDS = CCBoard.SIZE * CCBoard.SIZE / 64;
+
+	// masks[player_id * WORDS + word]
+	private final long[] masks;
+
+	public CCBitboardPieceStore() {
+		this.masks = new long[CCBoard.NUMBER_OF_PLAYERS * WORDS];
+	}
+
+	private CCBitboardPieceStore(long[] masks) {
+		this.masks = masks;
+	}
+
+	@Override
+	public int get(int square) {
+		int word = square >>> 6;
+		long bit = 1L << square;
+		for (int p = 0; p < CCBoard.NUMBER_OF_PLAYERS; p++) {
+			if ((masks[p * WORDS + word] & bit) != 0)
+				return p;
+		}
+		return EMPTY;
+	}
+
+	@Override
+	public void put(int square, int player_id) {
+		masks[player_id * WORDS + (square >>> 6)] |= 1L << square;
+	}
+
+	@Override
+	public void remove(int square) {
+		int word = square >>> 6;
+		long clear = ~(1L << square);
+		for (int p = 0; p < CCBoard.NUMBER_OF_PLAYERS; p++) {
+			masks[p * WORDS + word] &= clear;
+		}
+	}
+
+	@Override
+	public int getPieceSquares(int player_id, int[] squares) {
+		int count = 0;
+		for (int w = 0; w < WORDS; w++) {
+			long m = masks[player_id * WORDS + w];
+			while (m != 0) {
+				squares[count++] = (w << 6) + Long.numberOfTrailingZeros(m);
+				m &= m - 1;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public ArrayList<Point> getPieces(int player_id) {
+		ArrayList<Point> points = new ArrayList<Point>(13);
+		for (int w = 0; w < WORDS; w++) {
+			long m = masks[player_id * WORDS + w];
+			while (m != 0) {
+				points.add(CCBoard.pointOf((w << 6) + Long.numberOfTrailingZeros(m)));
+				m &= m - 1;
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * @param player_id the player ID
+	 * @param word the index of the 64 square word, 0 to 3
+	 * @return the occupancy bits of the player for that word
+	 */
+	public long getMask(int player_id, int word) {
+		return masks[player_id * WORDS + word];
+	}
+
+	@Override
+	public CCPieceStore copy() {
+		return new CCBitboardPieceStore(masks.clone());
+	}
+}
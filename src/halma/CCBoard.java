@@ -1,398 +1,694 @@
-package halma;
-
-import java.awt.Point;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map.Entry;
-
-import boardgame.Board;
-import boardgame.BoardPanel;
-import boardgame.Move;
-
-public class CCBoard extends Board{
-
-	public final static int NUMBER_OF_PLAYERS=4;
-	public final static int SIZE = 16;
-
-	private static final int MAX_TURN=1000;
-	private static final int MAX_BASE_TURN=100;
-
-	private static final int[][] moves= {{1,1}, {1,0}, {1,-1}, {0,-1}, {-1,-1}, {-1,0}, {-1,1}, {0,1}};
-
-	final static Point[] basePoints={new Point(0,0), new Point(1,0), new Point(2,0), new Point(3,0),
-		new Point(0,1), new Point(1,1), new Point(2,1), new Point(3,1),
-		new Point(0,2), new Point(1,2), new Point(2,2),
-		new Point(0,3), new Point(1,3)};
-
-	public final static HashSet<Point>[] bases= initializeBases();
-
-	private int turnNumber;
-	private int winner= NOBODY;
-	private int turn_player;
-	private Point lastMovedInTurn;
-	private HashSet<Point> lastPoints = new HashSet<Point>();
-	public HashMap<Point, Integer> board= new HashMap<Point, Integer>(40);
-
-
-	private CCBoard(HashMap<Point, Integer> board, int turnNumber, int winner,
-			int turn_player, Point lastMovedInTurn, HashSet<Point> lastPoints) {
-		super();
-		this.board = board;
-		this.turnNumber = turnNumber;
-		this.winner = winner;
-		this.turn_player = turn_player;
-		this.lastMovedInTurn = lastMovedInTurn;
-		this.lastPoints = lastPoints;
-	}
-
-
-	public CCBoard() {
-		turnNumber=0;
-		turn_player=0;
-		lastMovedInTurn=null;
-		initializeBoard();
-	}
-
-
-	private void initializeBoard() {
-		for(int i=0; i<4; i++){
-			for(int j=0; j<basePoints.length; j++){
-				Point p= new Point( (i%2==0)?basePoints[j].x:SIZE-basePoints[j].x-1, 
-						((i>>1)%2==0)?basePoints[j].y:SIZE-basePoints[j].y-1);
-				board.put(p, i);
-			}
-		}
-	}
-
-
-	@Override
-	public int getWinner() {
-		if(turnNumber >= MAX_TURN)
-			return DRAW;
-		return winner;
-	}
-
-	/**
-	 * Generate a set of all points in the bases
-	 * @return a set of all points in the bases
-	 */
-	private static HashSet<Point>[] initializeBases() {
-		HashSet<Point>[] b= new HashSet[4];
-		for(int i=0; i<4; i++){
-			b[i] = new HashSet<Point>();
-			for(int j=0; j<basePoints.length; j++){
-				Point p= new Point( (i%2==0)?basePoints[j].x:SIZE-basePoints[j].x-1, 
-						((i>>1)%2==0)?basePoints[j].y:SIZE-basePoints[j].y-1);
-				b[i].add(p);
-			}
-		}
-
-		return b;
-	}
-
-	/**
-	 * Check if a player has a piece in a certain base
-	 * @param player_id the id of the player to check
-	 * @param base_id the id of the base to check
-	 * @return true if any piece belonging to player_id is in base_id
-	 */
-	private boolean checkIfInBase(int player_id, int base_id){
-		boolean in=false;
-		Integer IDInteger= new Integer(player_id);
-		for(Point p: bases[base_id]){
-			in |= IDInteger.equals(board.get(p));
-		}
-		return in;
-	}
-
-	private void updateWinner(int player_id){
-		if(turnNumber >= MAX_BASE_TURN){
-			// if either player of a team is still in the wrong base, then opposing team wins
-			boolean inWrongBase = false;
-			for(int i=0; i<4; i++){
-				if(i!= (player_id^3))
-					inWrongBase |= checkIfInBase(player_id, i);
-			}
-			if(inWrongBase){
-				winner= (getTeamIndex(player_id)+1)%2;
-			}
-
-		}
-		// check if this team is winning
-		if(checkIfWin(player_id) && checkIfWin(player_id^3))
-			winner= getTeamIndex(player_id);
-
-	}
-
-	/**
-	 * Get the team index belonging to a player
-	 * @param player_id player id
-	 * @return the team index of player_id (either 0 or 1)
-	 */
-	public static int getTeamIndex(int player_id){
-		return (player_id == 0 || (player_id^3)==0)?0:1;
-	}
-
-
-	/**
-	 * Check if all player ID has all his pieces in his target corner
-	 * @param ID player ID
-	 * @return true if all pieces of player ID is in his target corner
-	 */
-	private boolean checkIfWin(int ID){
-		assert(ID<4);
-		boolean win=true;
-		int base_id= ID^3;
-		Integer IDInteger= new Integer(ID);
-
-		for(Point p: bases[base_id]){
-			win &= IDInteger.equals(board.get(p));
-		}
-
-		return win;
-	}
-
-
-	@Override
-	public void forceWinner(int win) {
-		if(win > 3 ) throw new IllegalArgumentException("Invalid player given to forceWinner()");
-		winner=win;
-	}
-	@Override
-	public int getTurn() {
-		return turn_player;
-	}
-
-	@Override
-	public int getTurnsPlayed() {
-		return turnNumber;
-	}
-
-	@Override
-	public void move(Move m) throws IllegalArgumentException {
-		CCMove ccm= (CCMove) m;
-
-		// check if the move is legal, then execute it
-		if(isLegal(ccm) ){
-			if(ccm.to != null && ccm.from != null ){
-				board.remove(ccm.from);
-				board.put(ccm.to, ccm.player_id);
-				lastMovedInTurn= ccm.to;
-				lastPoints.add(ccm.from);
-			}
-		}else{
-			throw new IllegalArgumentException("Invalid move sent: "+ ccm.toPrettyString());
-		}
-		
-		// update winner tracking
-		updateWinner(ccm.player_id);
-
-		// if the turn is ending, update turn counter and make it the next players turn to play
-		if(ccm.to== null || ccm.from == null || !ccm.isHop()){
-			if(turn_player==3)
-				turnNumber++;
-			turn_player=(turn_player+1)%4;
-			lastMovedInTurn=null;
-			lastPoints.clear();
-		}
-	}
-
-	@Override
-	public String getNameForID(int p) {
-		return String.format("Player-%d", p);
-	}
-
-	@Override
-	public int getIDForName(String s) {
-		return Integer.valueOf(s.split("-")[1]);
-	}
-
-	@Override
-	public int getNumberOfPlayers() {
-		return NUMBER_OF_PLAYERS;
-	}
-
-	@Override
-	public Move parseMove(String str) throws NumberFormatException,
-	IllegalArgumentException {
-		return new CCMove(str);
-	}
-
-	@Override
-	public Object clone() {
-		return new CCBoard((HashMap<Point, Integer>) board.clone(), turnNumber, winner, turn_player, lastMovedInTurn, (HashSet<Point>) lastPoints.clone());
-	}
-
-	/** get the player_id of the piece at a given position. 
-	 * Returns null if no piece if found.
-	 * @param p the point on the board to check
-	 * @return the player_id of the piece found. Null if no piece is found.
-	 */
-	public Integer getPieceAt(Point p){
-		return board.get(p);
-	}
-	
-
-	/**
-	 * Get all pieces belonging to a given player
-	 * @param player_id the player ID
-	 * @return a list of all pieces belonging to player_id
-	 */
-	public ArrayList<Point> getPieces(int player_id){
-		ArrayList<Point> points = new ArrayList<Point>();
-		for(Entry<Point, Integer> e: board.entrySet()){
-			if(e.getValue() == player_id)
-				points.add(e.getKey());
-		}
-		return points;
-	}
-
-	/**
-	 * Check if a given move is legal
-	 * @param m The move to check
-	 * @return true of the move is allowed, false otherwise
-	 */
-	public boolean isLegal(CCMove m){
-		boolean legal=true;
-
-		// check if the turn is allowed to end
-		if(m.to == null || m.from == null)
-			return lastMovedInTurn!=null || checkIfWin(m.player_id);
-
-		// check if the move is within the board
-		legal &= CCMove.inRange(m, 0, SIZE-1);
-
-		// check if move comes from the correct player
-		legal &= m.player_id == getTurn();
-
-		// check if piece to move is from the correct player
-		legal &= board.containsKey(m.from);
-		if(legal)
-			legal &= board.get(m.from).intValue() == m.player_id;
-		
-		// check if the piece is hoping back to a position it has been before
-		legal &= !lastPoints.contains(m.to);
-
-		// check if the position to move to is empty
-		legal &= !board.containsKey(m.to);
-
-		// check if the move is a hop and legal
-		boolean h= m.isHop();
-		legal &= !h || (h && board.containsKey(m.getMid()) && ((lastMovedInTurn == null) || lastMovedInTurn.equals(m.from)));
-
-		// check if the move is a simple move and if it is allowed
-		boolean sm= m.maxDist() == 1;
-		legal &= (h && !sm) || (sm && lastMovedInTurn == null);
-
-		// check if the move would take a piece out of a opposing base
-		boolean toIn= bases[m.player_id ^ 3].contains(m.to);
-		boolean fromIn= bases[m.player_id ^ 3].contains(m.from);
-		legal &= !fromIn || (toIn && fromIn);
-
-		return legal;
-	}
-
-
-	/**
-	 * Get all legal move for the current state of the board. 
-	 * If the player is allowed to end his turn, then a move with from=null and to=null is included.
-	 * NOTE: this will give moves for any player regardless of who calls this method.
-	 * @return A list of all allowed moves for the current state of the board
-	 */
-	public ArrayList<CCMove> getLegalMoves(){
-		ArrayList<CCMove> legalMoves= new ArrayList<CCMove>(10);
-
-		if(lastMovedInTurn != null){
-			// if last move was a hop allow termination
-			legalMoves.add(new CCMove(getTurn(), null, null));
-
-			// allow all further hops with the same piece
-			Point from= lastMovedInTurn;
-			for(int i=0;i<8; i++){
-				int dx = moves[i][0];
-				int dy = moves[i][1];
-				Point to=new Point(from.x+2*dx, from.y+2*dy);
-				CCMove move=new CCMove(getTurn(), from, to);
-				if(isLegal(move))
-					legalMoves.add(move);
-			}
-		}else{
-			for( Entry<Point, Integer> entry: board.entrySet()){
-				addLegalMoveForPiece(entry.getKey(), entry.getValue().intValue(), legalMoves);
-			}
-			if(checkIfWin(getTurn()))
-				legalMoves.add(new CCMove(getTurn(), null, null));
-		}
-		return legalMoves;
-	}
-
-	/**
-	 * Get all the allowed moves for a given pi
-	 * @param p
-	 * @param player_id
-	 * @return
-	 */
-	public ArrayList<CCMove> getLegalMoveForPiece(Point p, int player_id){
-		ArrayList<CCMove> moveList = new ArrayList<CCMove>();
-		addLegalMoveForPiece(p, player_id, moveList);
-		return moveList;
-	}
-
-	public void addLegalMoveForPiece(Point p, int player_id, ArrayList<CCMove> moveList){
-		if(player_id == getTurn() && board.containsKey(p)
-				&& (board.get(p).intValue()==getTurn())){
-			Point from= p;
-			for(int i=0;i<8; i++){
-				// check all moves surrounding that piece
-				int dx = moves[i][0];
-				int dy = moves[i][1];
-				Point to=new Point(from.x+dx, from.y+dy);
-				CCMove move;
-
-				// if there is another piece adjacent check for a hop move
-				if(board.containsKey(to)){
-					move = new CCMove(getTurn(), from, new Point(to.x+dx, to.y+dy));
-				}else{
-					// otherwise add the move to that square
-					move = new CCMove(getTurn(), from, to);
-				}
-				// filter out any moves that might not be legal (i.e., moving pieces out of the objective)
-				if(isLegal(move))
-					moveList.add(move);
-			}
-		}
-	}
-	
-	/**
-	 * Get the last piece moved in the turn.
-	 * @return A point representing the last pieced moved. Null if called at the begining of a turn.
-	 */
-	public Point getLastMoved(){
-		return lastMovedInTurn;
-	}
-	
-	@Override
-	public String toString(){
-		StringBuilder sb = new StringBuilder();
-		for(int y=SIZE-1; y>=0; y--){
-			for(int x=0; x<SIZE; x++){
-				Integer i= board.get(new Point(x,y));
-				if(i != null)
-					sb.append(i.toString());
-				else
-					sb.append('-');
-				if(x<SIZE-1)
-					sb.append(' ');
-				else
-					sb.append('\n');
-			}
-		}
-		return sb.toString();
-	}
-
-	@Override
-	public BoardPanel createBoardPanel() { return new CCBoardPanel(); }
-
-}
+package halma;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import boardgame.Board;
+import boardgame.BoardPanel;
+import boardgame.Move;
+import halma.geometry.Geometry;
+
+public class CCBoard extends Board{
+
+	public final static int NUMBER_OF_PLAYERS=4;
+	public final static int SIZE = 16;
+
+	private static final int MAX_TURN=1000;
+	private static final int MAX_BASE_TURN=100;
+
+	private static final int[][] moves= {{1,1}, {1,0}, {1,-1}, {0,-1}, {-1,-1}, {-1,0}, {-1,1}, {0,1}};
+
+	final static Point[] basePoints={new Point(0,0), new Point(1,0), new Point(2,0), new Point(3,0),
+		new Point(0,1), new Point(1,1), new Point(2,1), new Point(3,1),
+		new Point(0,2), new Point(1,2), new Point(2,2),
+		new Point(0,3), new Point(1,3)};
+
+	public final static HashSet<Point>[] bases= initializeBases();
+
+	// the squares of each base, see squareOf()
+	final static int[][] baseSquares= initializeBaseSquares();
+
+	// Zobrist keys, see hash()
+	private final static long[] PIECE_KEYS= randomKeys(NUMBER_OF_PLAYERS * SIZE * SIZE, 1);
+	private final static long[] TURN_KEYS= randomKeys(NUMBER_OF_PLAYERS, 2);
+	private final static long[] LAST_MOVED_KEYS= randomKeys(SIZE * SIZE, 3);
+	private final static long[] LAST_POINT_KEYS= randomKeys(SIZE * SIZE, 4);
+
+	// Evaluation terms kept per player, by player_id * TERMS + term
+	private static final int PIECES= 0;
+	private static final int GOAL_MANHATTAN= 1;
+	private static final int IN_BASE= 2;
+	private static final int IN_GOAL= 3;
+	private static final int NEAR_OPPONENTS= 4;
+	private static final int TERMS= 5;
+
+	private int turnNumber;
+	private int winner= NOBODY;
+	private int turn_player;
+	private Point lastMovedInTurn;
+	private HashSet<Point> lastPoints = new HashSet<Point>();
+	private CCPieceStore board;
+	private long hash;
+	// updated with the pieces by move() and unmakeMove(), see updateTerms()
+	private int[] terms;
+
+	// undo records for makeMove(), reused once allocated
+	private ArrayList<Undo> undoStack;
+	private int undoCount;
+
+
+	private CCBoard(CCPieceStore board, long hash, int[] terms, int turnNumber, int winner,
+			int turn_player, Point lastMovedInTurn, HashSet<Point> lastPoints) {
+		super();
+		this.board = board;
+		this.hash = hash;
+		this.terms = terms;
+		this.turnNumber = turnNumber;
+		this.winner = winner;
+		this.turn_player = turn_player;
+		this.lastMovedInTurn = lastMovedInTurn;
+		this.lastPoints = lastPoints;
+	}
+
+
+	public CCBoard() {
+		this(new CCBitboardPieceStore());
+	}
+
+	/**
+	 * Create a board in the starting position using a specific piece storage.
+	 * @param store an empty piece store
+	 */
+	public CCBoard(CCPieceStore store) {
+		board=store;
+		turnNumber=0;
+		turn_player=0;
+		lastMovedInTurn=null;
+		initializeBoard();
+	}
+
+
+	private void initializeBoard() {
+		terms= new int[NUMBER_OF_PLAYERS * TERMS];
+		for(int i=0; i<4; i++){
+			for(int j=0; j<baseSquares[i].length; j++){
+				board.put(baseSquares[i][j], i);
+				hash ^= PIECE_KEYS[i * SIZE * SIZE + baseSquares[i][j]];
+				terms[i * TERMS + PIECES]++;
+				updateTerms(i, baseSquares[i][j], 1);
+			}
+		}
+		hash ^= TURN_KEYS[turn_player];
+	}
+
+	/**
+	 * Add or remove the contribution of a piece to the terms of its player.
+	 * @param player_id the owner of the piece
+	 * @param square the square of the piece
+	 * @param sign 1 when the piece arrives on the square, -1 when it leaves
+	 */
+	private void updateTerms(int player_id, int square, int sign){
+		int t= player_id * TERMS;
+		terms[t + GOAL_MANHATTAN]+= sign * Geometry.goalManhattan(square, player_id);
+		if(Geometry.inBase(square, player_id))
+			terms[t + IN_BASE]+= sign;
+		if(Geometry.inGoal(square, player_id))
+			terms[t + IN_GOAL]+= sign;
+		if(Geometry.nearOpponents(square, player_id))
+			terms[t + NEAR_OPPONENTS]+= sign;
+	}
+
+	/**
+	 * @param player_id the player ID
+	 * @return the number of pieces of the player
+	 */
+	public int getPieceCount(int player_id){
+		return terms[player_id * TERMS + PIECES];
+	}
+
+	/**
+	 * @param player_id the player ID
+	 * @return the sum of the manhattan distances of the player's pieces to 
+	 * the far corner of the goal base, see Geometry.goalManhattan()
+	 */
+	public int getGoalManhattanSum(int player_id){
+		return terms[player_id * TERMS + GOAL_MANHATTAN];
+	}
+
+	/**
+	 * @param player_id the player ID
+	 * @return the number of the player's pieces still in the home base
+	 */
+	public int getPiecesInBase(int player_id){
+		return terms[player_id * TERMS + IN_BASE];
+	}
+
+	/**
+	 * @param player_id the player ID
+	 * @return the number of the player's pieces in the goal base
+	 */
+	public int getPiecesInGoal(int player_id){
+		return terms[player_id * TERMS + IN_GOAL];
+	}
+
+	/**
+	 * @param player_id the player ID
+	 * @return the number of the player's pieces near a corner of the other 
+	 * team, see Geometry.nearOpponents()
+	 */
+	public int getPiecesNearOpponents(int player_id){
+		return terms[player_id * TERMS + NEAR_OPPONENTS];
+	}
+
+	private static long[] randomKeys(int count, long seed) {
+		Random r= new Random(0x5EEDL * 31 + seed);
+		long[] keys= new long[count];
+		for(int i=0; i<count; i++)
+			keys[i]= r.nextLong();
+		return keys;
+	}
+
+	/**
+	 * Get the Zobrist key of the position. It covers the pieces, the player to 
+	 * move and the state of a hop sequence in progress (the piece being moved and
+	 * the points it already left). It does not cover the turn counter or a winner
+	 * set through forceWinner(). The key is updated incrementally by move(), 
+	 * restored by unmakeMove() and kept by clone().
+	 * @return a 64 bit hash of the position
+	 */
+	public long hash(){
+		return hash;
+	}
+
+
+	@Override
+	public int getWinner() {
+		if(turnNumber >= MAX_TURN)
+			return DRAW;
+		return winner;
+	}
+
+	/**
+	 * Generate a set of all points in the bases
+	 * @return a set of all points in the bases
+	 */
+	private static HashSet<Point>[] initializeBases() {
+		HashSet<Point>[] b= new HashSet[4];
+		for(int i=0; i<4; i++){
+			b[i] = new HashSet<Point>();
+			for(int j=0; j<basePoints.length; j++){
+				Point p= new Point( (i%2==0)?basePoints[j].x:SIZE-basePoints[j].x-1, 
+						((i>>1)%2==0)?basePoints[j].y:SIZE-basePoints[j].y-1);
+				b[i].add(p);
+			}
+		}
+
+		return b;
+	}
+
+	private static int[][] initializeBaseSquares() {
+		int[][] b= new int[4][basePoints.length];
+		for(int i=0; i<4; i++){
+			for(int j=0; j<basePoints.length; j++){
+				b[i][j]= squareOf( (i%2==0)?basePoints[j].x:SIZE-basePoints[j].x-1, 
+						((i>>1)%2==0)?basePoints[j].y:SIZE-basePoints[j].y-1);
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Get the square index of a position on the board.
+	 * @param x the column
+	 * @param y the row
+	 * @return the square index, x + y * SIZE
+	 */
+	public static int squareOf(int x, int y){
+		return x + y * SIZE;
+	}
+
+	/**
+	 * Get the position of a square index.
+	 * @param square the square index
+	 * @return a new point for that square
+	 */
+	public static Point pointOf(int square){
+		return new Point(square % SIZE, square / SIZE);
+	}
+
+	/**
+	 * @param p a point, possibly off the board
+	 * @return true if p is on the board
+	 */
+	private static boolean onBoard(Point p){
+		return p.x >= 0 && p.y >= 0 && p.x < SIZE && p.y < SIZE;
+	}
+
+	/**
+	 * @param p a point, possibly off the board
+	 * @return true if there is a piece on p
+	 */
+	private boolean isOccupied(Point p){
+		return onBoard(p) && board.get(squareOf(p.x, p.y)) != CCPieceStore.EMPTY;
+	}
+
+	/**
+	 * Check if a player has a piece in a certain base
+	 * @param player_id the id of the player to check
+	 * @param base_id the id of the base to check
+	 * @return true if any piece belonging to player_id is in base_id
+	 */
+	private boolean checkIfInBase(int player_id, int base_id){
+		for(int sq: baseSquares[base_id]){
+			if(board.get(sq) == player_id)
+				return true;
+		}
+		return false;
+	}
+
+	private void updateWinner(int player_id){
+		if(turnNumber >= MAX_BASE_TURN){
+			// if either player of a team is still in the wrong base, then opposing team wins
+			boolean inWrongBase = false;
+			for(int i=0; i<4; i++){
+				if(i!= (player_id^3))
+					inWrongBase |= checkIfInBase(player_id, i);
+			}
+			if(inWrongBase){
+				winner= (getTeamIndex(player_id)+1)%2;
+			}
+
+		}
+		// check if this team is winning
+		if(checkIfWin(player_id) && checkIfWin(player_id^3))
+			winner= getTeamIndex(player_id);
+
+	}
+
+	/**
+	 * Get the team index belonging to a player
+	 * @param player_id player id
+	 * @return the team index of player_id (either 0 or 1)
+	 */
+	public static int getTeamIndex(int player_id){
+		return (player_id == 0 || (player_id^3)==0)?0:1;
+	}
+
+
+	/**
+	 * Check if all player ID has all his pieces in his target corner
+	 * @param ID player ID
+	 * @return true if all pieces of player ID is in his target corner
+	 */
+	public boolean checkIfWin(int ID){
+		assert(ID<4);
+		for(int sq: baseSquares[ID^3]){
+			if(board.get(sq) != ID)
+				return false;
+		}
+		return true;
+	}
+
+
+	@Override
+	public void forceWinner(int win) {
+		if(win > 3 ) throw new IllegalArgumentException("Invalid player given to forceWinner()");
+		winner=win;
+	}
+	@Override
+	public int getTurn() {
+		return turn_player;
+	}
+
+	@Override
+	public int getTurnsPlayed() {
+		return turnNumber;
+	}
+
+	@Override
+	public void move(Move m) throws IllegalArgumentException {
+		execute((CCMove) m, null);
+	}
+
+	/**
+	 * Execute a move so that it can later be reverted with unmakeMove().
+	 * This lets search code walk a game tree on a single board instead of 
+	 * cloning it for every node. Moves must be undone in reverse order.
+	 * The undo history is not copied by clone().
+	 * @param m the move to play
+	 * @throws IllegalArgumentException if the move is illegal
+	 */
+	public void makeMove(CCMove m) throws IllegalArgumentException {
+		if(undoStack == null)
+			undoStack= new ArrayList<Undo>();
+		if(undoCount == undoStack.size())
+			undoStack.add(new Undo());
+		Undo u= undoStack.get(undoCount);
+		execute(m, u);
+		undoCount++;
+	}
+
+	/**
+	 * Revert the last move played with makeMove(), restoring the board exactly.
+	 * @throws IllegalStateException if there is no move to undo
+	 */
+	public void unmakeMove() throws IllegalStateException {
+		if(undoCount == 0)
+			throw new IllegalStateException("No move to undo");
+		Undo u= undoStack.get(--undoCount);
+
+		hash= u.hash;
+		turnNumber= u.turnNumber;
+		turn_player= u.turn_player;
+		winner= u.winner;
+		lastMovedInTurn= u.lastMovedInTurn;
+		if(u.swappedPoints){
+			HashSet<Point> empty= lastPoints;
+			lastPoints= u.points;
+			u.points= empty;
+		}
+		if(u.addedPoint)
+			lastPoints.remove(u.from);
+		if(u.from != null){
+			int from= squareOf(u.from.x, u.from.y);
+			int to= squareOf(u.to.x, u.to.y);
+			board.remove(to);
+			board.put(from, u.player_id);
+			updateTerms(u.player_id, to, -1);
+			updateTerms(u.player_id, from, 1);
+		}
+		u.from= null;
+		u.to= null;
+		u.lastMovedInTurn= null;
+	}
+
+	/**
+	 * @return the number of moves which can be reverted with unmakeMove()
+	 */
+	public int getUndoDepth(){
+		return undoCount;
+	}
+
+	private void execute(CCMove ccm, Undo u) throws IllegalArgumentException {
+		// check if the move is legal, then execute it
+		if(!isLegal(ccm) ){
+			throw new IllegalArgumentException("Invalid move sent: "+ ccm.toPrettyString());
+		}
+
+		if(u != null){
+			u.player_id= ccm.player_id;
+			u.from= null;
+			u.to= null;
+			u.addedPoint= false;
+			u.swappedPoints= false;
+			u.hash= hash;
+			u.turnNumber= turnNumber;
+			u.turn_player= turn_player;
+			u.winner= winner;
+			u.lastMovedInTurn= lastMovedInTurn;
+		}
+
+		if(ccm.to != null && ccm.from != null ){
+			int from= squareOf(ccm.from.x, ccm.from.y);
+			int to= squareOf(ccm.to.x, ccm.to.y);
+			board.remove(from);
+			board.put(to, ccm.player_id);
+			updateTerms(ccm.player_id, from, -1);
+			updateTerms(ccm.player_id, to, 1);
+			hash ^= PIECE_KEYS[ccm.player_id * SIZE * SIZE + from] ^ PIECE_KEYS[ccm.player_id * SIZE * SIZE + to];
+			if(lastMovedInTurn != null)
+				hash ^= LAST_MOVED_KEYS[squareOf(lastMovedInTurn.x, lastMovedInTurn.y)];
+			hash ^= LAST_MOVED_KEYS[to];
+			lastMovedInTurn= ccm.to;
+			boolean added= lastPoints.add(ccm.from);
+			if(added)
+				hash ^= LAST_POINT_KEYS[from];
+			if(u != null){
+				u.from= ccm.from;
+				u.to= ccm.to;
+				u.addedPoint= added;
+			}
+		}
+		
+		// update winner tracking
+		updateWinner(ccm.player_id);
+
+		// if the turn is ending, update turn counter and make it the next players turn to play
+		if(ccm.to== null || ccm.from == null || !ccm.isHop()){
+			if(turn_player==3)
+				turnNumber++;
+			hash ^= TURN_KEYS[turn_player] ^ TURN_KEYS[(turn_player+1)%4];
+			turn_player=(turn_player+1)%4;
+			if(lastMovedInTurn != null)
+				hash ^= LAST_MOVED_KEYS[squareOf(lastMovedInTurn.x, lastMovedInTurn.y)];
+			lastMovedInTurn=null;
+			for(Point p: lastPoints)
+				hash ^= LAST_POINT_KEYS[squareOf(p.x, p.y)];
+			if(u != null && !lastPoints.isEmpty()){
+				// keep the visited points for unmakeMove(), reusing the record's spare set
+				HashSet<Point> spare= u.points;
+				if(spare == null)
+					spare= new HashSet<Point>();
+				else
+					spare.clear();
+				u.points= lastPoints;
+				lastPoints= spare;
+				u.swappedPoints= true;
+			}else{
+				lastPoints.clear();
+			}
+		}
+	}
+
+	/** State needed by unmakeMove() to revert one move. */
+	private static final class Undo {
+		int player_id;
+		Point from, to;
+		boolean addedPoint;
+		boolean swappedPoints;
+		// the visited points before the turn ended, or a cleared spare set
+		HashSet<Point> points;
+		long hash;
+		int turnNumber;
+		int turn_player;
+		int winner;
+		Point lastMovedInTurn;
+	}
+
+	@Override
+	public String getNameForID(int p) {
+		return String.format("Player-%d", p);
+	}
+
+	@Override
+	public int getIDForName(String s) {
+		return Integer.valueOf(s.split("-")[1]);
+	}
+
+	@Override
+	public int getNumberOfPlayers() {
+		return NUMBER_OF_PLAYERS;
+	}
+
+	@Override
+	public Move parseMove(String str) throws NumberFormatException,
+	IllegalArgumentException {
+		return new CCMove(str);
+	}
+
+	@Override
+	public Object clone() {
+		return new CCBoard(board.copy(), hash, terms.clone(), turnNumber, winner, turn_player, lastMovedInTurn, (HashSet<Point>) lastPoints.clone());
+	}
+
+	/** get the player_id of the piece at a given position. 
+	 * Returns null if no piece if found.
+	 * @param p the point on the board to check
+	 * @return the player_id of the piece found. Null if no piece is found.
+	 */
+	public Integer getPieceAt(Point p){
+		if(!onBoard(p))
+			return null;
+		int id= board.get(squareOf(p.x, p.y));
+		return id == CCPieceStore.EMPTY ? null : Integer.valueOf(id);
+	}
+
+	/**
+	 * Get the player_id of the piece on a square.
+	 * @param square the square index, see squareOf()
+	 * @return the player_id of the piece found, CCPieceStore.EMPTY if none.
+	 */
+	public int getPieceAt(int square){
+		return board.get(square);
+	}
+	
+
+	/**
+	 * Get all pieces belonging to a given player
+	 * @param player_id the player ID
+	 * @return a list of all pieces belonging to player_id
+	 */
+	public ArrayList<Point> getPieces(int player_id){
+		return board.getPieces(player_id);
+	}
+
+	/**
+	 * Get the squares of all pieces belonging to a given player without allocating.
+	 * @param player_id the player ID
+	 * @param squares the array to fill, must hold at least 13 elements
+	 * @return the number of squares written
+	 */
+	public int getPieceSquares(int player_id, int[] squares){
+		return board.getPieceSquares(player_id, squares);
+	}
+
+	/**
+	 * Check if a given move is legal
+	 * @param m The move to check
+	 * @return true of the move is allowed, false otherwise
+	 */
+	public boolean isLegal(CCMove m){
+		boolean legal=true;
+
+		// check if the turn is allowed to end
+		if(m.to == null || m.from == null)
+			return lastMovedInTurn!=null || checkIfWin(m.player_id);
+
+		// check if the move is within the board
+		if(!CCMove.inRange(m, 0, SIZE-1))
+			return false;
+
+		// check if move comes from the correct player
+		legal &= m.player_id == getTurn();
+
+		// check if piece to move is from the correct player
+		legal &= board.get(squareOf(m.from.x, m.from.y)) == m.player_id;
+		
+		// check if the piece is hoping back to a position it has been before
+		legal &= !lastPoints.contains(m.to);
+
+		// check if the position to move to is empty
+		legal &= board.get(squareOf(m.to.x, m.to.y)) == CCPieceStore.EMPTY;
+
+		// check if the move is a hop and legal
+		boolean h= m.isHop();
+		legal &= !h || (h && isOccupied(m.getMid()) && ((lastMovedInTurn == null) || lastMovedInTurn.equals(m.from)));
+
+		// check if the move is a simple move and if it is allowed
+		boolean sm= m.maxDist() == 1;
+		legal &= (h && !sm) || (sm && lastMovedInTurn == null);
+
+		// check if the move would take a piece out of a opposing base
+		boolean toIn= bases[m.player_id ^ 3].contains(m.to);
+		boolean fromIn= bases[m.player_id ^ 3].contains(m.from);
+		legal &= !fromIn || (toIn && fromIn);
+
+		return legal;
+	}
+
+
+	/**
+	 * Get all legal move for the current state of the board. 
+	 * If the player is allowed to end his turn, then a move with from=null and to=null is included.
+	 * NOTE: this will give moves for any player regardless of who calls this method.
+	 * @return A list of all allowed moves for the current state of the board
+	 */
+	public ArrayList<CCMove> getLegalMoves(){
+		ArrayList<CCMove> legalMoves= new ArrayList<CCMove>(10);
+
+		if(lastMovedInTurn != null){
+			// if last move was a hop allow termination
+			legalMoves.add(new CCMove(getTurn(), null, null));
+
+			// allow all further hops with the same piece
+			Point from= lastMovedInTurn;
+			for(int i=0;i<8; i++){
+				int dx = moves[i][0];
+				int dy = moves[i][1];
+				Point to=new Point(from.x+2*dx, from.y+2*dy);
+				CCMove move=new CCMove(getTurn(), from, to);
+				if(isLegal(move))
+					legalMoves.add(move);
+			}
+		}else{
+			int[] squares= new int[basePoints.length];
+			int count= board.getPieceSquares(getTurn(), squares);
+			for(int i=0; i<count; i++){
+				addLegalMoveForPiece(pointOf(squares[i]), getTurn(), legalMoves);
+			}
+			if(checkIfWin(getTurn()))
+				legalMoves.add(new CCMove(getTurn(), null, null));
+		}
+		return legalMoves;
+	}
+
+	/**
+	 * Get all the allowed moves for a given pi
+	 * @param p
+	 * @param player_id
+	 * @return
+	 */
+	public ArrayList<CCMove> getLegalMoveForPiece(Point p, int player_id){
+		ArrayList<CCMove> moveList = new ArrayList<CCMove>();
+		addLegalMoveForPiece(p, player_id, moveList);
+		return moveList;
+	}
+
+	public void addLegalMoveForPiece(Point p, int player_id, ArrayList<CCMove> moveList){
+		if(player_id == getTurn() && onBoard(p)
+				&& (board.get(squareOf(p.x, p.y))==getTurn())){
+			Point from= p;
+			for(int i=0;i<8; i++){
+				// check all moves surrounding that piece
+				int dx = moves[i][0];
+				int dy = moves[i][1];
+				Point to=new Point(from.x+dx, from.y+dy);
+				CCMove move;
+
+				// if there is another piece adjacent check for a hop move
+				if(isOccupied(to)){
+					move = new CCMove(getTurn(), from, new Point(to.x+dx, to.y+dy));
+				}else{
+					// otherwise add the move to that square
+					move = new CCMove(getTurn(), from, to);
+				}
+				// filter out any moves that might not be legal (i.e., moving pieces out of the objective)
+				if(isLegal(move))
+					moveList.add(move);
+			}
+		}
+	}
+	
+	/**
+	 * Get the last piece moved in the turn.
+	 * @return A point representing the last pieced moved. Null if called at the begining of a turn.
+	 */
+	public Point getLastMoved(){
+		return lastMovedInTurn;
+	}
+	
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for(int y=SIZE-1; y>=0; y--){
+			for(int x=0; x<SIZE; x++){
+				int i= board.get(squareOf(x,y));
+				if(i != CCPieceStore.EMPTY)
+					sb.append(i);
+				else
+					sb.append('-');
+				if(x<SIZE-1)
+					sb.append(' ');
+				else
+					sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public BoardPanel createBoardPanel() { return new CCBoardPanel(); }
+
+}
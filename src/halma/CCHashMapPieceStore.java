@@ -0,0 +1,65 @@
+package halma;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+/**
+ * The original CCBoard representation, mapping points to player IDs.
+ * Kept as a reference implementation for benchmarks and move generator checks.
+ */
+public class CCHashMapPieceStore implements CCPieceStore {
+
+	private HashMap<Point, Integer> board;
+
+	public CCHashMapPieceStore() {
+		this(new HashMap<Point, Integer>(40));
+	}
+
+	private CCHashMapPieceStore(HashMap<Point, Integer> board) {
+		this.board = board;
+	}
+
+	@Override
+	public int get(int square) {
+		Integer i = board.get(CCBoard.pointOf(square));
+		return i == null ? EMPTY : i.intValue();
+	}
+
+	@Override
+	public void put(int square, int player_id) {
+		board.put(CCBoard.pointOf(square), player_id);
+	}
+
+	@Override
+	public void remove(int square) {
+		board.remove(CCBoard.pointOf(square));
+	}
+
+	@Override
+	public int getPieceSquares(int player_id, int[] squares) {
+		int count = 0;
+		for (Entry<Point, Integer> e : board.entrySet()) {
+			if (e.getValue() == player_id)
+				squares[count++] = CCBoard.squareOf(e.getKey().x, e.getKey().y);
+		}
+		return count;
+	}
+
+	@Override
+	public ArrayList<Point> getPieces(int player_id) {
+		ArrayList<Point> points = new ArrayList<Point>();
+		for (Entry<Point, Integer> e : board.entrySet()) {
+			if (e.getValue() == player_id)
+				points.add(e.getKey());
+		}
+		return points;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public CCPieceStore copy() {
+		return new CCHashMapPieceStore((HashMap<Point, Integer>) board.clone());
+	}
+}
@@ -7,11 +7,11 @@ import halma.minimax.features.AdjacentToBaseFeature;
 import halma.minimax.features.DontLeaveAloneFeature;
 import halma.minimax.features.Feature;
 import halma.minimax.features.LeaveBaseFeature;
+import halma.minimax.features.LinearEvaluator;
 import halma.minimax.features.ManhattanDistanceFeature;
 import halma.minimax.features.NotInGoalZoneFeature;
 
 import java.awt.Point;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -19,7 +19,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Random;
-import java.util.Set;
 
 import boardgame.Board;
 import boardgame.Move;
@@ -27,12 +26,7 @@ import boardgame.Player;
 
 public class CCHeuristicPlayer extends Player {
 	
-	private static final int[] FRIEND = {3,2,1,0};
 	private static final int[][] OPPONENT = {{1,2},{0,3},{0,3},{1,2}};
-    private final static int[][] DIRECTIONAL_OFFSETS = {
-    	{0,1},{1,1},{1,0},
-    	{0,-1},{1,-1},{-1, -1},{-1,1},{-1,0}
-    };
 
 	private final static Point[] BASE_POINTS = {new Point(0,0), new Point(1,0), new Point(2,0), new Point(3,0),
 		new Point(0,1), new Point(1,1), new Point(2,1), new Point(3,1),
@@ -53,6 +47,9 @@ public class CCHeuristicPlayer extends Player {
     		new NotInGoalZoneFeature(0.015),
     		new AdjacentToBaseFeature(0.05) 
     );
+
+    // The features compiled into one pass, rebuilt when the list changes
+    private LinearEvaluator evaluator;
     
     /**
      * The cached list of moves.
@@ -118,14 +115,8 @@ public class CCHeuristicPlayer extends Player {
 			}
 		}
 		
-		// If the move isn't a hop, then simply apply it
-		if (!pair.isHop()) {
-			return new CCMove(playerID, pair.getInitial(), pair.getDestination());
-		}
-		
-		
-		// If the move is a hop, then need to figure out sequence from initial to hop.
-		generateMoveSequence(board, pair.getInitial(), pair.getDestination());
+		// Queue up the moves of the turn, a hop ends with end-of-turn.
+		pair.addMoves(playerID, moveList);
 		return moveList.remove();
 	}
 
@@ -152,62 +143,6 @@ public class CCHeuristicPlayer extends Player {
 	public void movePlayed(Board board, Move move) {
 	}
 	
-	private void generateMoveSequence(CCBoard board, Point from, Point to) {
-		HashSet<Point> visited = new HashSet<Point>(100);
-		visited.add(from);
-		ArrayList<Point> points = new ArrayList<Point>(100);
-		points.add(from);
-		generateMoveSequence(board, from, to, visited, points);
-	}
-	
-	/**
-	 * This fills the move list with a sequence of moves from one point to another.
-	 * @param board The board.
-	 * @param from Initial starting point.
-	 * @param to End point.
-	 */
-	private boolean generateMoveSequence(CCBoard board, Point from, Point to, Set<Point> visitedPoints, List<Point> points) {
-		// If we've reached the end, then generate all the moves
-		if (from.equals(to)) {
-			Point lastPoint = null;
-			for (Point p : points) {
-				if (lastPoint != null) {
-					moveList.add(new CCMove(playerID, lastPoint, p));
-				}
-				lastPoint = p;
-			}
-			
-			// Add last move
-			moveList.add(new CCMove(playerID, null, null));
-			return true;
-		}
-		
-		for (int[] offset : DIRECTIONAL_OFFSETS) {
-			Point hopPoint = new Point(from.x + offset[0], from.y + offset[1]);
-			if (board.getPieceAt(hopPoint) == null) {
-				continue;
-			}
-			
-			Point newPoint = new Point(from.x + offset[0] * 2, from.y + offset[1] * 2);
-			// If in range, not visited, and empty
-			if (newPoint.x >= 0 && newPoint.y >= 0 && newPoint.x < 16 && newPoint.y < 16) {
-				if (board.getPieceAt(newPoint) == null && !visitedPoints.contains(newPoint)) {
-					// Test that if you are going out of the friend's base, which is illegal
-					if (!BASES[FRIEND[playerID]].contains(from) || BASES[FRIEND[playerID]].contains(newPoint)) {
-						visitedPoints.add(newPoint);
-						// Visit the point
-						points.add(newPoint);
-						if (generateMoveSequence(board, newPoint, to, visitedPoints, points)) {
-							return true;
-						}
-						points.remove(points.size() - 1);
-					}
-				}
-			}
-		}
-		return false;
-	}
-	
 	private class Pair<A, B> {
 		private A first;
 		private B second;
@@ -237,12 +172,12 @@ public class CCHeuristicPlayer extends Player {
 		}
 
 		// Sum up the result for all features
-		double result = 0;
-		for (Feature feature : features) {
-			result += (feature.getWeight(board, originalBoard, playerID) * feature.getScore(board, originalBoard, playerID));
+		LinearEvaluator evaluator = this.evaluator;
+		if (evaluator == null || evaluator.getFeatures() != features) {
+			evaluator = LinearEvaluator.compile(features);
+			this.evaluator = evaluator;
 		}
-		
-		return result;
+		return evaluator.evaluate(board, originalBoard, playerID);
 	}
 		
 }
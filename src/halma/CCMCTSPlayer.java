@@ -1,6 +1,8 @@
 package halma;
 
+import halma.geometry.Geometry;
 import halma.minimax.BoardPointPair;
+import halma.minimax.EvaluationCache;
 import halma.minimax.MoveGenerator;
 import halma.minimax.features.AdjacentToBaseFeature;
 import halma.minimax.features.AvoidOpponentBaseFeature;
@@ -9,18 +11,28 @@ import halma.minimax.features.DontLeaveAloneFeature;
 import halma.minimax.features.Feature;
 import halma.minimax.features.HuddleFeature;
 import halma.minimax.features.LeaveBaseFeature;
+import halma.minimax.features.LinearEvaluator;
 import halma.minimax.features.ManhattanDistanceFeature;
 import halma.minimax.features.NotInGoalZoneFeature;
 
 import java.awt.Point;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import boardgame.Board;
 import boardgame.Move;
@@ -44,10 +56,51 @@ public class CCMCTSPlayer extends Player {
 	private static double[] SCORE_LEVELS = {5000, 100, 0, -0.5, -1, -100};
 	// Number of points to reward for each score level (1 extra for last level)
 	private static int[] SCORE_REWARDS = {1000, 10, 3, 1, -1, -4, -1000};
+	private static int THREADS = 1;
+	// Print the statistics of each search, also see getPlayouts()
+	private static boolean VERBOSE = Boolean.getBoolean("halma.verbose");
+	// The evaluation of a game won or lost, beyond any of the features
+	private static final double WIN_SCORE = 10000;
+	private static final double LOSS_SCORE = -10000;
+	// Points counted for a playout still in progress when threads share a
+	// tree, those of a lost game, so that other threads are steered to other
+	// branches. See Rollout.simulation() for the points of a playout.
+	private static final double VIRTUAL_LOSS_POINTS = 1 + LOSS_SCORE;
+
+	/**
+	 * How the search is split over threads.
+	 */
+	public enum Parallelism {
+		/** Each thread grows its own tree, the root statistics are summed. */
+		ROOT,
+		/** All threads grow one tree, using virtual loss. */
+		TREE
+	}
 
 	// Agent variables
 	private Random random;
 	private Queue<CCMove> moveCache;
+	// The node of our last move. The search tree below it is kept
+	// between turns, see advanceRoot().
+	private MoveNode lastChoice;
+
+	// Search threads. The calling thread always searches as well, with
+	// the first rollout state.
+	private int threads = THREADS;
+	private Parallelism parallelism = Parallelism.TREE;
+	private Rollout[] rollouts = new Rollout[0];
+	private ExecutorService workers;
+	private List<Future<?>> running = new ArrayList<Future<?>>();
+	private volatile boolean stopped;
+	private long playouts;
+	private boolean verbose = VERBOSE;
+
+	// Grows a tree from the position predicted for our next turn while the
+	// others play, see Ponderer. The next search goes on from it if the
+	// prediction was right.
+	private Ponderer ponderer;
+	private boolean ponder = Ponderer.ENABLED;
+	private MoveNode pondered;
 	
     // Enabled features
     protected List<Feature> features = Arrays.asList(
@@ -60,40 +113,20 @@ public class CCMCTSPlayer extends Player {
     		new AvoidOpponentBaseFeature(0.25),
     		new DontBlockFriendFeature()
     );
+
+    // The features compiled into one pass, rebuilt when the list changes
+    private LinearEvaluator evaluator;
+
+    /**
+     * Evaluations of boards seen before, allocated on the first search.
+     */
+    private static int EVALUATION_CACHE_SIZE = 1 << 18;
+    private int evaluationCacheSize = EVALUATION_CACHE_SIZE;
+    private volatile EvaluationCache evaluationCache;
     
     
 	// Static variables
 	private static final int[] FRIEND = { 3, 2, 1, 0 };
-	private final static int[][] DIRECTIONAL_OFFSETS = { { 0, 1 }, { 1, 1 },
-			{ 1, 0 }, { 0, -1 }, { 1, -1 }, { -1, -1 }, { -1, 1 }, { -1, 0 } };
-
-	private final static Point[] GOAL_POINTS = {
-			new Point(CCBoard.SIZE - 1, CCBoard.SIZE - 1),
-			new Point(0, CCBoard.SIZE - 1), new Point(CCBoard.SIZE - 1, 0),
-			new Point(0, 0) };
-
-	private static double[][][][][] MOVE_VALUE;
-	{
-		// Initialize the distance of each point to each goal
-		MOVE_VALUE = new double[16][16][16][16][4];
-		for (int x1 = 0; x1 < 16; x1++) {
-			for (int y1 = 0; y1 < 16; y1++) {
-				for (int x2 = 0; x2 < 16; x2++) {
-					for (int y2 = 0; y2 < 16; y2++) {
-						for (int p = 0; p < 4; p++) {
-							double startDist = Math.sqrt(Math.pow(x1
-									- GOAL_POINTS[p].x, 2)
-									+ Math.pow(y1 - GOAL_POINTS[p].y, 2));
-							double endDist = Math.sqrt(Math.pow(x2
-									- GOAL_POINTS[p].x, 2)
-									+ Math.pow(y2 - GOAL_POINTS[p].y, 2));
-							MOVE_VALUE[x1][y1][x2][y2][p] = startDist - endDist;
-						}
-					}
-				}
-			}
-		}
-	}
 
 	// Actual code
 
@@ -108,6 +141,7 @@ public class CCMCTSPlayer extends Player {
 	public Move chooseMove(Board board) {
 		// Start timings
 		long endTime = System.currentTimeMillis() + TIMEOUT;
+		initEvaluationCache();
 		
 		CCBoard original = (CCBoard) board;
 		
@@ -115,6 +149,9 @@ public class CCMCTSPlayer extends Player {
 		if (!moveCache.isEmpty()) {
 			return moveCache.remove();
 		}
+		if (ponderer != null) {
+			ponderer.finish(original);
+		}
 		
 		BoardPointPair bestPair = null;
 		// If we are in end or beginning game, simply brute force.
@@ -137,20 +174,11 @@ public class CCMCTSPlayer extends Player {
 					bestPair = current;
 				}
 			}
+			// The tree is only used in the midgame
+			lastChoice = null;
+			pondered = null;
 		} else {
-			// Create the root move node
-			BoardPointPair pair = new BoardPointPair((CCBoard) board, null, null);
-			MoveNode node = new MoveNode(pair, null);
-			
-			// Initialize the root and then perform as many rounds as possible.
-			node.initRoot();
-			do {
-				node.performRound();
-			} while (System.currentTimeMillis() < endTime);
-			System.out.println("Simulated: " + node.simulations);
-
-			// Return the pair of the best child.			
-			bestPair = node.getBestChild().pair;
+			bestPair = search(original, endTime);
 		}
 
 		// Generate the move cache if it was a hop
@@ -168,16 +196,349 @@ public class CCMCTSPlayer extends Player {
 				moveCache.add(new CCMove(playerID, null, null));
 				return move;
 			}
-		} else if (!bestPair.isHop()) {
-			return new CCMove(playerID, bestPair.getInitial(),
-					bestPair.getDestination());
 		} else {
-			generateMoveSequence((CCBoard) board, bestPair.getInitial(),
-					bestPair.getDestination());
+			// Queue up the moves of the turn, a hop ends with end-of-turn.
+			bestPair.addMoves(playerID, moveCache);
 			return moveCache.remove();
 		}
 	}
 	
+	/**
+	 * Run the tree search until the end time, on all configured threads.
+	 * The move is picked as soon as the end time is reached, the other
+	 * threads stop after their current round.
+	 * @param board the position to search, our turn to play
+	 * @param endTime the time to stop at, in milliseconds
+	 * @return the best move found, or null if there is none
+	 */
+	public BoardPointPair search(CCBoard board, long endTime) {
+		finishWorkers();
+		startWorkers();
+		initEvaluationCache();
+
+		// Continue from the previous tree if it reached this position,
+		// otherwise start a new one.
+		MoveNode node = advanceRoot(board);
+		if (node == null) {
+			BoardPointPair pair = new BoardPointPair(board, null, null);
+			node = new MoveNode(pair, null);
+		}
+		int reused = node.simulations;
+		
+		// Initialize the root and start the other threads, either on the
+		// same tree or on trees of their own.
+		for (Rollout rollout : rollouts) {
+			rollout.endTime = endTime;
+		}
+		node.initRoot();
+		stopped = false;
+		boolean shared = parallelism == Parallelism.TREE;
+		MoveNode[] trees = new MoveNode[shared ? 1 : threads];
+		trees[0] = node;
+		for (int i = 1; i < threads; i++) {
+			final MoveNode tree;
+			if (shared) {
+				tree = node;
+			} else {
+				tree = new MoveNode(new BoardPointPair((CCBoard) board.clone(), null, null), null);
+				trees[i] = tree;
+			}
+			final Rollout rollout = rollouts[i];
+			final boolean initRoot = !shared;
+			final boolean virtualLoss = shared;
+			final long end = endTime;
+			running.add(workers.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (initRoot) {
+						tree.initRoot();
+					}
+					while (!stopped && System.currentTimeMillis() < end) {
+						tree.performRound(rollout, virtualLoss);
+					}
+				}
+			}));
+		}
+
+		// Perform as many rounds as possible.
+		boolean virtualLoss = shared && threads > 1;
+		do {
+			node.performRound(rollouts[0], virtualLoss);
+		} while (System.currentTimeMillis() < endTime);
+		stopped = true;
+
+		// Return the pair of the best child.
+		playouts = node.simulations - reused;
+		if (shared) {
+			lastChoice = node.getBestChild();
+		} else {
+			for (int i = 1; i < trees.length; i++) {
+				playouts += trees[i].simulations;
+			}
+			lastChoice = getBestMergedChild(trees);
+		}
+		if (verbose) {
+			System.out.println("Simulated: " + playouts + " (reused " + reused + ")"
+					+ (evaluationCache == null ? "" : ", " + evaluationCache)
+					+ (ponderer == null ? "" : ", " + ponderer));
+		}
+		return lastChoice == null ? null : lastChoice.pair;
+	}
+
+	/**
+	 * Sum up the statistics of the root children of several trees.
+	 * @return the child of the first tree with the most simulations in total.
+	 */
+	private MoveNode getBestMergedChild(MoveNode[] trees) {
+		Map<Integer, Integer> simulations = new HashMap<Integer, Integer>();
+		for (MoveNode tree : trees) {
+			for (MoveNode child : tree.children) {
+				Integer key = moveKey(child.pair);
+				Integer total = simulations.get(key);
+				simulations.put(key, (total == null ? 0 : total) + child.simulations);
+			}
+		}
+		MoveNode bestNode = null;
+		int best = Integer.MIN_VALUE;
+		for (MoveNode child : trees[0].children) {
+			int total = simulations.get(moveKey(child.pair));
+			if (total > best) {
+				best = total;
+				bestNode = child;
+			}
+		}
+		return bestNode;
+	}
+
+	private static int moveKey(BoardPointPair pair) {
+		if (pair.getInitial() == null || pair.getDestination() == null) {
+			return -1;
+		}
+		return CCBoard.squareOf(pair.getInitial().x, pair.getInitial().y) << 8
+				| CCBoard.squareOf(pair.getDestination().x, pair.getDestination().y);
+	}
+
+	/**
+	 * @param threads the number of threads searching each move, at least 1
+	 * @param parallelism how the threads split the search
+	 */
+	public void setThreads(int threads, Parallelism parallelism) {
+		if (threads < 1) throw new IllegalArgumentException("Need at least one search thread");
+		finishWorkers();
+		this.threads = threads;
+		this.parallelism = parallelism;
+		// Trees of other threads are not kept
+		lastChoice = null;
+		pondered = null;
+	}
+
+	/**
+	 * Grow the tree of a position on the ponder thread, on top of what the
+	 * last search found about it.
+	 */
+	private void ponder(CCBoard board, Ponderer.Job job) {
+		// The workers of the last search may still be in their last round
+		finishWorkers();
+		startWorkers();
+		initEvaluationCache();
+		MoveNode node = findNode(lastChoice, board);
+		if (node == null) {
+			node = new MoveNode(new BoardPointPair((CCBoard) board.clone(), null, null), null);
+		}
+		node.parent = null;
+		node.initRoot();
+		pondered = node;
+		Rollout rollout = rollouts[0];
+		rollout.endTime = Long.MAX_VALUE;
+		while (!job.isCancelled()) {
+			node.performRound(rollout, false);
+		}
+	}
+
+	/**
+	 * @param verbose true to print the playouts and the root children of
+	 * each search
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * @param ponder true to search on the turns of the other players, from
+	 * the next game on
+	 */
+	public void setPondering(boolean ponder) {
+		if (!ponder && ponderer != null) ponderer.shutdown();
+		this.ponder = ponder;
+	}
+
+	/**
+	 * @return the number of playouts of the last search, over all threads
+	 */
+	public long getPlayouts() {
+		return playouts;
+	}
+
+	/**
+	 * Allocate the evaluation cache if it is enabled, before the search
+	 * threads share it.
+	 */
+	private void initEvaluationCache() {
+		if (evaluationCache == null && evaluationCacheSize > 0) {
+			evaluationCache = new EvaluationCache(evaluationCacheSize);
+		}
+	}
+
+	/**
+	 * @param entries the number of evaluations to keep, 0 to disable the cache
+	 */
+	public void setEvaluationCacheSize(int entries) {
+		if (entries < 0) throw new IllegalArgumentException("Negative cache size");
+		this.evaluationCacheSize = entries;
+		this.evaluationCache = null;
+	}
+
+	/**
+	 * @return the evaluation cache, or null if it is disabled or not allocated yet.
+	 */
+	public EvaluationCache getEvaluationCache() {
+		return evaluationCache;
+	}
+
+	private void startWorkers() {
+		if (rollouts.length != threads) {
+			if (workers != null) {
+				workers.shutdownNow();
+				workers = null;
+			}
+			rollouts = new Rollout[threads];
+			rollouts[0] = new Rollout(random);
+			for (int i = 1; i < threads; i++) {
+				rollouts[i] = new Rollout(new Random());
+			}
+		}
+		if (workers == null && threads > 1) {
+			workers = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, getName() + "-worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Wait for the threads of the last search to stop, so that the tree
+	 * is not changed under us.
+	 */
+	private void finishWorkers() {
+		stopped = true;
+		for (Future<?> f : running) {
+			try {
+				f.get();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		running.clear();
+	}
+
+	@Override
+	public void gameOver(String msg) {
+		if (ponderer != null) {
+			ponderer.shutdown();
+		}
+		finishWorkers();
+		if (workers != null) {
+			workers.shutdownNow();
+			workers = null;
+		}
+		super.gameOver(msg);
+	}
+
+	/**
+	 * Find the position of the board in the tree of the last ponder run, or
+	 * among the descendants of the move we played last, which are the turns
+	 * of the other three players.
+	 * @return the matching node, detached from the old tree, or null.
+	 */
+	private MoveNode advanceRoot(CCBoard board) {
+		MoveNode node = pondered;
+		pondered = null;
+		if (node == null || !samePosition(node.pair.getBoard(), board)) {
+			node = findNode(lastChoice, board);
+		}
+		if (node != null) {
+			// Drop the rest of the old tree
+			node.parent = null;
+		}
+		return node;
+	}
+
+	/**
+	 * @return the node of the board among the descendants of a node, down to
+	 * three turns, or null
+	 */
+	private MoveNode findNode(MoveNode root, CCBoard board) {
+		if (root == null) {
+			return null;
+		}
+		List<MoveNode> level = new ArrayList<MoveNode>();
+		level.add(root);
+		for (int depth = 1; depth < CCBoard.NUMBER_OF_PLAYERS && !level.isEmpty(); depth++) {
+			List<MoveNode> next = new ArrayList<MoveNode>();
+			for (MoveNode node : level) {
+				for (MoveNode child : node.children) {
+					if (samePosition(child.pair.getBoard(), board)) {
+						return child;
+					}
+					next.add(child);
+				}
+			}
+			level = next;
+		}
+		return null;
+	}
+
+	private static boolean samePosition(CCBoard a, CCBoard b) {
+		return a.hash() == b.hash() && a.getTurn() == b.getTurn()
+				&& a.getTurnsPlayed() == b.getTurnsPlayed();
+	}
+
+	@Override
+	public void gameStarted(String msg) {
+		super.gameStarted(msg);
+		if (ponder) {
+			if (ponderer == null) {
+				ponderer = new Ponderer(this, new Ponderer.Search() {
+					@Override
+					public CCBoard target(CCBoard board) {
+						// The tree is only used in the midgame
+						CCBoard predicted = ponderer.predict(board);
+						return predicted != null && isMidGame(predicted) ? predicted : null;
+					}
+
+					@Override
+					public void ponder(CCBoard target, Ponderer.Job job) {
+						CCMCTSPlayer.this.ponder(target, job);
+					}
+				});
+			}
+			ponderer.gameStarted();
+		}
+		lastChoice = null;
+		pondered = null;
+	}
+
+	@Override
+	public void movePlayed(Board board, Move move) {
+		if (ponderer != null && ponder) {
+			ponderer.movePlayed(board);
+		}
+	}
+
 	private boolean isMidGame(CCBoard board) {
 		int inOwnGoalZone = 0;
 		int inOtherGoalZone = 0;
@@ -191,13 +552,28 @@ public class CCMCTSPlayer extends Player {
 		return inOwnGoalZone <= BEGINNING_GAME_PIECES && inOtherGoalZone < END_GAME_PIECES;
 	}
 
+	private static final AtomicIntegerFieldUpdater<MoveNode> SIMULATIONS =
+			AtomicIntegerFieldUpdater.newUpdater(MoveNode.class, "simulations");
+	private static final AtomicIntegerFieldUpdater<MoveNode> VIRTUAL_LOSSES =
+			AtomicIntegerFieldUpdater.newUpdater(MoveNode.class, "virtualLosses");
+	private static final AtomicLongFieldUpdater<MoveNode> POINTS =
+			AtomicLongFieldUpdater.newUpdater(MoveNode.class, "pointBits");
+
+	/**
+	 * A node of the search tree. The counters are updated atomically and
+	 * children are published as a complete list, so that several threads
+	 * can search the same tree.
+	 */
 	private class MoveNode {
 		private BoardPointPair pair;
 		public MoveNode parent;
 
-		private List<MoveNode> children;
-		public int simulations;
-		public double points;
+		private volatile List<MoveNode> children;
+		public volatile int simulations;
+		// Playouts through this node which are still running
+		public volatile int virtualLosses;
+		// The points, as the bits of a double
+		public volatile long pointBits;
 		public double heuristic;
 
 		/**
@@ -210,14 +586,34 @@ public class CCMCTSPlayer extends Player {
 			this.heuristic = 0;
 			this.pair = pair;
 			this.parent = parent;
-			this.children = new LinkedList<>();
+			this.children = Collections.emptyList();
+		}
+
+		/**
+		 * @return the total points of the playouts through this node.
+		 */
+		public double getPoints() {
+			return Double.longBitsToDouble(pointBits);
+		}
+
+		private void addPoints(double points) {
+			long bits;
+			do {
+				bits = pointBits;
+			} while (!POINTS.compareAndSet(this, bits,
+					Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + points)));
 		}
 
 		/**
-		 * Initializes the root, setting the heuristic on each child.
+		 * Initializes the root, setting the heuristic on each child. The
+		 * children of a reused root keep their statistics.
 		 */
 		private void initRoot() {
-			expansion();
+			synchronized (this) {
+				if (isLeaf()) {
+					expansion();
+				}
+			}
 			for (MoveNode child : children) {
 				// Give a bias to the root's children.
 				child.heuristic = evaluateBoard(child.pair.getBoard(), pair.getBoard(), playerID);
@@ -232,42 +628,66 @@ public class CCMCTSPlayer extends Player {
 			// will be the most promising child.
 			MoveNode bestNode = null;
 			int best = Integer.MIN_VALUE;
-			String content = "";
+			StringBuilder content = verbose ? new StringBuilder() : null;
 			for (MoveNode child : children) {
-				content += child.points + "/" + child.simulations + ", ";
+				if (verbose) {
+					content.append(child.getPoints()).append('/').append(child.simulations).append(", ");
+				}
 				if (child.simulations > best) {
 					best = child.simulations;
 					bestNode = child;
 				}
 			}
-			System.out.println(content);
+			if (verbose) {
+				System.out.println(content);
+			}
 			return bestNode;
 		}
 
 		/**
 		 * Performs one round of the 4 steps.
+		 * @param rollout the rollout state of the calling thread
+		 * @param virtualLoss true to count the playout as a loss on its path
+		 * until it is done, when other threads search the same tree
 		 */
-		private void performRound() {
+		private void performRound(Rollout rollout, boolean virtualLoss) {
 			MoveNode current = this;
+			if (virtualLoss) {
+				VIRTUAL_LOSSES.incrementAndGet(current);
+			}
 			// Select nodes until we reach a leaf.
 			while (!current.isLeaf()) {
 				current = current.selection();
+				if (virtualLoss) {
+					VIRTUAL_LOSSES.incrementAndGet(current);
+				}
+			}
+			// Expand the leaf, unless another thread did it first.
+			synchronized (current) {
+				if (current.isLeaf()) {
+					current.expansion();
+				}
 			}
-			// Expand the leaf.
-			current.expansion();
 			// Pick a child if any were created
 			if (!current.isLeaf()) {
 				current = current.selection();
+				if (virtualLoss) {
+					VIRTUAL_LOSSES.incrementAndGet(current);
+				}
 			}
-			double points = current.simulation();
+			double points = current.simulation(rollout);
 			// Simulate a game and then backpropagate
-			current.propagation(points);
+			current.propagation(points, virtualLoss);
 		}
 
 		/**
 		 * @return the score for a given node.
 		 */
 		private double evaluate() {
+			// Playouts in progress count as lost games.
+			int losses = virtualLosses;
+			int simulations = this.simulations + losses;
+			double points = getPoints() + losses * VIRTUAL_LOSS_POINTS;
 			double bias = heuristic / (simulations + 1);
 			// To avoid dividing by 0
 			if (simulations == 0)
@@ -275,7 +695,7 @@ public class CCMCTSPlayer extends Player {
 			return ((double) points / (simulations))
 					+ bias
 					+ (EXPLORATION_PARAMETER * Math.sqrt(Math
-							.log(parent.simulations) / (simulations)));
+							.log(parent.simulations + parent.virtualLosses) / (simulations)));
 		}
 
 		/**
@@ -314,38 +734,89 @@ public class CCMCTSPlayer extends Player {
 			}
 			MoveGenerator generator = new MoveGenerator(pair.getBoard(), pair
 					.getBoard().getTurn());
+			List<MoveNode> expanded = new ArrayList<MoveNode>();
 			while (generator.hasNext()) {
 				BoardPointPair pair = generator.next();
-				children.add(new MoveNode(pair, this));
+				expanded.add(new MoveNode(pair, this));
 			}
+			children = expanded;
 		}
 
 		/**
 		 * This rolls out an entire game.
 		 * 
+		 * @param rollout the rollout state of the calling thread
+		 * @return Points for the game
+		 */
+		private double simulation(Rollout rollout) {
+			return rollout.simulation(pair.getBoard());
+		}
+
+		/**
+		 * This propagates a simulation result back up the tree based on the
+		 * node's parent.
+		 * 
+		 * @param points
+		 *            Points associated with a game
+		 */
+		private void propagation(double points, boolean virtualLoss) {
+			// Iterate through parents until we get to null, backpropagating the
+			// value
+			MoveNode node = this;
+			while (node != null) {
+				SIMULATIONS.incrementAndGet(node);
+				node.addPoints(points);
+				if (virtualLoss) {
+					VIRTUAL_LOSSES.decrementAndGet(node);
+				}
+				node = node.parent;
+			}
+		}
+	}
+
+	/**
+	 * The playout policy, with the scratch state of one thread.
+	 */
+	private class Rollout {
+		private final Random random;
+		// Scratch state, see rolloutMove()
+		private double bestRolloutValue;
+		private List<CCMove> rolloutPath = new ArrayList<CCMove>();
+		private List<CCMove> bestRolloutPath = new ArrayList<CCMove>();
+		private Set<Point> visitedPoints = new HashSet<Point>();
+		// Playouts are cut short at the end of the search
+		private long endTime = Long.MAX_VALUE;
+
+		public Rollout(Random random) {
+			this.random = random;
+		}
+
+		/**
+		 * This rolls out a game from a position.
+		 * 
+		 * @param startBoard the position to start from
 		 * @return Points for the game
 		 */
-		private double simulation() {
-			CCBoard gameBoard = (CCBoard) pair.getBoard().clone();
+		private double simulation(CCBoard startBoard) {
+			CCBoard gameBoard = (CCBoard) startBoard.clone();
 
 			// Do a heavy playout by generating all moves and picking the one
 			// that maximizes the change in distance
 			double lastProbability = 0;
-			CCBoard lastBoard = null;
 
 			// Simulate up to a fixed depth.
-			for (int i = 0; i < ROLLOUT_MOVES && gameBoard.getWinner() == Board.NOBODY; i++) {
+			for (int i = 0; i < ROLLOUT_MOVES && gameBoard.getWinner() == Board.NOBODY
+					&& System.currentTimeMillis() < endTime; i++) {
 				lastProbability = random.nextDouble();
-				lastBoard = (CCBoard)gameBoard.clone();
 				if (lastProbability <= RANDOM_MOVE_PROBABILITY) {
-					gameBoard = randomMove(gameBoard, gameBoard.getTurn());
+					randomMove(gameBoard, gameBoard.getTurn());
 				} else {
-					gameBoard = rolloutMove(gameBoard, gameBoard.getTurn());
+					rolloutMove(gameBoard, gameBoard.getTurn());
 				}
 			}
 
 			// Return the board heuristic value.
-			double score = evaluateBoard(gameBoard, pair.getBoard(), playerID);
+			double score = evaluateBoard(gameBoard, startBoard, playerID);
 			return 1 + score;
 			//return (gameBoard.getWinner() == gameBoard.getTeamIndex(playerID)) ? 1
 			//		: ((gameBoard.getWinner() == Board.DRAW) ? 0 : -1);
@@ -356,152 +827,113 @@ public class CCMCTSPlayer extends Player {
 		 * 
 		 * @param startBoard
 		 * @param player
-		 * @return
 		 */
-		private CCBoard randomMove(CCBoard startBoard, int player) {
+		private void randomMove(CCBoard startBoard, int player) {
 			while (startBoard.getTurn() == player) {
 				List<CCMove> moves = startBoard.getLegalMoves();
 				startBoard.move(moves.get(random.nextInt(moves.size())));
 			}
-			return startBoard;
 		}
 
 		/**
-		 * Performs a non-random move based on a simple heuristic.
+		 * Performs a non-random move based on a simple heuristic. The hop
+		 * sequences are explored in place with makeMove/unmakeMove, and only
+		 * the best one is played on the board.
 		 * 
 		 * @param startBoard
 		 * @param player
-		 * @return
 		 */
-		private CCBoard rolloutMove(CCBoard startBoard, int player) {
-			double best = -1000;
-			double value;
-			CCBoard bestBoard = null;
-			MoveGenerator generator = new MoveGenerator(startBoard, player);
-			while (generator.hasNext()) {
-				BoardPointPair pair = generator.next();
+		private void rolloutMove(CCBoard startBoard, int player) {
+			bestRolloutValue = -1000;
+			bestRolloutPath.clear();
+			rolloutPath.clear();
+			visitedPoints.clear();
+
+			List<CCMove> moves = startBoard.getLegalMoves();
+			Collections.shuffle(moves, random);
+			for (CCMove move : moves) {
 				// If the move is an actual move.
-				if (pair.getDestination() != null && pair.getInitial() != null) {
-
-					// Get the move value
-					value = MOVE_VALUE[pair.getInitial().x][pair.getInitial().y][pair.getDestination().x][pair.getDestination().y][player];
-					if (value > best) {
-						best = value;
-						bestBoard = pair.getBoard();
-					}
+				if (move.getFrom() != null && move.getTo() != null) {
+					visitedPoints.clear();
+					visitedPoints.add(move.getFrom());
+					exploreRollout(startBoard, move, move.getFrom(), player);
 				}
 			}
+
 			// If the move hasn't changed, apply a random legal move
-			if (bestBoard == null) {
-				return randomMove(startBoard, player);
+			if (bestRolloutPath.isEmpty()) {
+				randomMove(startBoard, player);
 			} else {
-				return bestBoard;
+				for (CCMove move : bestRolloutPath) {
+					startBoard.move(move);
+				}
+				if (startBoard.getTurn() == player) {
+					startBoard.move(new CCMove(player, null, null));
+				}
 			}
 		}
 
 		/**
-		 * This propagates a simulation result back up the tree based on the
-		 * node's parent.
-		 * 
-		 * @param points
-		 *            Points associated with a game
+		 * Scores a move of the rollout and, if it is a hop, every hop which
+		 * can follow it.
 		 */
-		private void propagation(double points) {
-			// Iterate through parents until we get to null, backpropagating the
-			// value
-			MoveNode node = this;
-			while (node != null) {
-				node.simulations++;
-				node.points += points;
-				node = node.parent;
-			}
-		}
-	}
-
-	private void generateMoveSequence(CCBoard board, Point from, Point to) {
-		HashSet<Point> visited = new HashSet<Point>(100);
-		visited.add(from);
-		ArrayList<Point> points = new ArrayList<Point>(100);
-		points.add(from);
-		generateMoveSequence(board, from, to, visited, points);
-	}
-
-	/**
-	 * This fills the move list with a sequence of moves from one point to
-	 * another.
-	 * 
-	 * @param board
-	 *            The board.
-	 * @param from
-	 *            Initial starting point.
-	 * @param to
-	 *            End point.
-	 */
-	private boolean generateMoveSequence(CCBoard board, Point from, Point to,
-			Set<Point> visitedPoints, List<Point> points) {
-		// If we've reached the end, then generate all the moves
-		if (from.equals(to)) {
-			Point lastPoint = null;
-			for (Point p : points) {
-				if (lastPoint != null) {
-					moveCache.add(new CCMove(playerID, lastPoint, p));
-				}
-				lastPoint = p;
-			}
-
-			// Add last move
-			moveCache.add(new CCMove(playerID, null, null));
-			return true;
-		}
-
-		for (int[] offset : DIRECTIONAL_OFFSETS) {
-			Point hopPoint = new Point(from.x + offset[0], from.y + offset[1]);
-			if (board.getPieceAt(hopPoint) == null) {
-				continue;
+		private void exploreRollout(CCBoard board, CCMove move, Point initial, int player) {
+			visitedPoints.add(move.getTo());
+			rolloutPath.add(move);
+
+			// Get the move value
+			double value = Geometry.goalDistance(CCBoard.squareOf(initial.x, initial.y), player)
+					- Geometry.goalDistance(CCBoard.squareOf(move.getTo().x, move.getTo().y), player);
+			if (value > bestRolloutValue) {
+				bestRolloutValue = value;
+				bestRolloutPath.clear();
+				bestRolloutPath.addAll(rolloutPath);
 			}
 
-			Point newPoint = new Point(from.x + offset[0] * 2, from.y
-					+ offset[1] * 2);
-			// If in range, not visited, and empty
-			if (newPoint.x >= 0 && newPoint.y >= 0 && newPoint.x < 16
-					&& newPoint.y < 16) {
-				if (board.getPieceAt(newPoint) == null
-						&& !visitedPoints.contains(newPoint)) {
-					// Test that if you are going out of the friend's base,
-					// which is illegal
-					if (!CCBoard.bases[FRIEND[playerID]].contains(from)
-							|| CCBoard.bases[FRIEND[playerID]]
-									.contains(newPoint)) {
-						visitedPoints.add(newPoint);
-						// Visit the point
-						points.add(newPoint);
-						if (generateMoveSequence(board, newPoint, to,
-								visitedPoints, points)) {
-							return true;
-						}
-						points.remove(points.size() - 1);
+			if (move.isHop()) {
+				board.makeMove(move);
+				List<CCMove> hops = board.getLegalMoves();
+				Collections.shuffle(hops, random);
+				for (CCMove hop : hops) {
+					if (hop.getTo() != null && !visitedPoints.contains(hop.getTo())) {
+						exploreRollout(board, hop, initial, player);
 					}
 				}
+				board.unmakeMove();
 			}
+			rolloutPath.remove(rolloutPath.size() - 1);
 		}
-		return false;
 	}
-	
+
 
 	public double evaluateBoard(CCBoard board, CCBoard originalBoard, int context) {
 		// If someone is winning, return extra large score.
 		if (board.getWinner() == CCBoard.getTeamIndex(context)) {
-			return 10000;
+			return WIN_SCORE;
 		} else if (board.getWinner() != CCBoard.NOBODY && board.getWinner() != CCBoard.DRAW) {
-			return -10000;
+			return LOSS_SCORE;
 		}
 
 		// Sum up the result for all features
-		double result = 0;
-		for (Feature feature : features) {
-			result += (feature.getWeight(board, originalBoard, context) * feature.getScore(board, originalBoard, context));
+		LinearEvaluator evaluator = this.evaluator;
+		EvaluationCache cache = evaluationCache;
+		if (evaluator == null || evaluator.getFeatures() != features) {
+			evaluator = LinearEvaluator.compile(features);
+			this.evaluator = evaluator;
+			// Values of the old features must not be returned
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+		if (cache == null) {
+			return evaluator.evaluate(board, originalBoard, context);
+		}
+		long key = EvaluationCache.key(board, originalBoard, context);
+		double result = cache.get(key);
+		if (Double.isNaN(result)) {
+			result = evaluator.evaluate(board, originalBoard, context);
+			cache.put(key, result);
 		}
-		
 		return result;
 	}
 
@@ -3,6 +3,8 @@ package halma;
 import halma.minimax.BoardPointPair;
 import halma.minimax.CombinedMoveGenerator;
 import halma.minimax.MoveGenerator;
+import halma.minimax.EvaluationCache;
+import halma.minimax.TranspositionTable;
 import halma.minimax.features.AdjacentToBaseFeature;
 import halma.minimax.features.AvoidOpponentBaseFeature;
 import halma.minimax.features.DontBlockFriendFeature;
@@ -10,6 +12,7 @@ import halma.minimax.features.DontLeaveAloneFeature;
 import halma.minimax.features.Feature;
 import halma.minimax.features.HuddleFeature;
 import halma.minimax.features.LeaveBaseFeature;
+import halma.minimax.features.LinearEvaluator;
 import halma.minimax.features.ManhattanDistanceFeature;
 import halma.minimax.features.NotInGoalZoneFeature;
 
@@ -21,7 +24,10 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import boardgame.Board;
 import boardgame.Move;
@@ -29,12 +35,7 @@ import boardgame.Player;
 
 public class CCMiniMaxPlayer extends Player {
 	
-	private static final int[] FRIEND = {3,2,1,0};
 	private static final int[][] OPPONENT = {{1,2},{0,3},{0,3},{1,2}};
-    private final static int[][] DIRECTIONAL_OFFSETS = {
-    	{0,1},{1,1},{1,0},
-    	{0,-1},{1,-1},{-1, -1},{-1,1},{-1,0}
-    };
 
 	private final static Point[] BASE_POINTS = {new Point(0,0), new Point(1,0), new Point(2,0), new Point(3,0),
 		new Point(0,1), new Point(1,1), new Point(2,1), new Point(3,1),
@@ -58,12 +59,65 @@ public class CCMiniMaxPlayer extends Player {
     		new AvoidOpponentBaseFeature(0.25),
     		new DontBlockFriendFeature()
     );
+
+    // The features compiled into one pass, rebuilt when the list changes
+    private LinearEvaluator evaluator;
+
+    /**
+     * Evaluations of boards seen before, allocated on the first search.
+     */
+    private static int EVALUATION_CACHE_SIZE = 1 << 18;
+    private int evaluationCacheSize = EVALUATION_CACHE_SIZE;
+    private volatile EvaluationCache evaluationCache;
     
     /**
      * The cached list of moves.
      */
     public Queue<CCMove> moveList = new LinkedList<>();
     private int count = 0;
+
+    /**
+     * Search configuration. The search deepens iteratively until the
+     * time budget of a move is spent or MAX_DEPTH is reached.
+     */
+    private static long TIMEOUT = 800;
+    private static int MAX_DEPTH = 8;
+    private static int THREADS = 1;
+    // Print the statistics of each search, also see getNodes()
+    private static boolean VERBOSE = Boolean.getBoolean("halma.verbose");
+    private long timeout = TIMEOUT;
+    private boolean verbose = VERBOSE;
+    private volatile long deadline;
+    private volatile boolean stopped;
+    // The ponder run of the current search, null for a move search
+    private volatile Ponderer.Job ponderJob;
+    private static final SearchTimeout SEARCH_TIMEOUT = new SearchTimeout();
+
+    /**
+     * Search threads. The calling thread runs the main search, the helpers
+     * run their own searches which share results through the table (Lazy SMP).
+     */
+    private int threads = THREADS;
+    private Search mainSearch = new Search();
+    private Search[] helperSearches = new Search[0];
+    private ExecutorService helpers;
+    private int lastCompletedDepth;
+
+    /**
+     * The transposition table, allocated on the first search.
+     */
+    private static final int TABLE_BUCKETS = 1 << 16;
+    private TranspositionTable table;
+    // Mixed into the position keys of the current search, see chooseMove()
+    private long searchSalt;
+
+    /**
+     * Searches the position predicted for our next turn while the others
+     * play, see Ponderer. The salt of the keys depends on the root, so the
+     * table only helps the next search if the prediction was right.
+     */
+    private Ponderer ponderer;
+    private boolean ponder = Ponderer.ENABLED;
     
     public CCMiniMaxPlayer(String name, List<Feature> features) {
     	super(name);
@@ -75,6 +129,38 @@ public class CCMiniMaxPlayer extends Player {
     public void setFeatures(List<Feature> features) {
 		this.features = features;
 	}
+
+    /**
+     * @param timeout the time budget of a move in milliseconds
+     */
+    public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+    /**
+     * @param threads the number of threads searching each move, at least 1
+     */
+    public void setThreads(int threads) {
+    	if (threads < 1) throw new IllegalArgumentException("Need at least one search thread");
+		this.threads = threads;
+	}
+
+    /**
+     * @param verbose true to print the depth, nodes and table statistics of
+     * each move
+     */
+    public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+    /**
+     * @param ponder true to search on the turns of the other players, from
+     * the next game on
+     */
+    public void setPondering(boolean ponder) {
+    	if (!ponder && ponderer != null) ponderer.shutdown();
+		this.ponder = ponder;
+	}
     
 	@Override
 	public Move chooseMove(Board theBoard) {
@@ -86,12 +172,16 @@ public class CCMiniMaxPlayer extends Player {
 		if (!moveList.isEmpty()) {
 			return moveList.remove();
 		}
+		if (ponderer != null) {
+			ponderer.finish(board);
+		}
 		
-		BoardPointPair pair = minimax(board, board, 2, true,
-				new Pair<Double,BoardPointPair>(0.0 + Integer.MIN_VALUE, null),
-				new Pair<Double,BoardPointPair>(0.0 + Integer.MAX_VALUE, null),
-				playerID
-			).getSecond();
+		BoardPointPair pair = search(board, MAX_DEPTH, timeout).getSecond();
+		if (verbose) {
+			System.out.println("Depth: " + lastCompletedDepth + ", nodes: " + getNodes() + ", " + table
+					+ (evaluationCache == null ? "" : ", " + evaluationCache)
+					+ (ponderer == null ? "" : ", " + ponderer));
+		}
 		
 		// If we have no move, then simply get the first non-hop legal move and apply it.
 		if (pair == null || pair.getInitial() == null || pair.getDestination() == null) {
@@ -102,16 +192,157 @@ public class CCMiniMaxPlayer extends Player {
 			}
 		}
 		
-		// If the move isn't a hop, then simply apply it
-		if (!pair.isHop()) {
-			return new CCMove(playerID, pair.getInitial(), pair.getDestination());
-		}
-		
-		// If the move is a hop, then need to figure out sequence from initial to hop.
-		generateMoveSequence(board, pair.getInitial(), pair.getDestination());
+		// Queue up the moves of the turn, a hop ends with end-of-turn.
+		pair.addMoves(playerID, moveList);
 		return moveList.remove();
 	}
 
+	/**
+	 * Search a position with iterative deepening, using the configured
+	 * number of threads.
+	 * @param board the position to search, our turn to play
+	 * @param maxDepth the last depth to search
+	 * @param timeout the time budget in milliseconds, or 0 to always reach
+	 * maxDepth. The first iteration always completes.
+	 * @return the score and best move of the last completed iteration
+	 */
+	public Pair<Double, BoardPointPair> search(CCBoard board, int maxDepth, long timeout) {
+		return search(board, maxDepth, timeout, null);
+	}
+
+	/**
+	 * @param job the ponder run, which stops the search once cancelled, or
+	 * null
+	 */
+	private Pair<Double, BoardPointPair> search(CCBoard board, int maxDepth, long timeout, Ponderer.Job job) {
+		long startTime = System.currentTimeMillis();
+		// Scores depend on the root board and the player we are searching
+		// for, so entries of earlier searches must not match.
+		if (table == null) {
+			table = new TranspositionTable(TABLE_BUCKETS);
+		}
+		table.newSearch();
+		initEvaluationCache();
+		searchSalt = mix(board.hash() ^ mix(playerID + 1));
+		deadline = Long.MAX_VALUE;
+		stopped = false;
+		ponderJob = job;
+
+		// Start the helpers, each on its own copy of the board and half of
+		// them one iteration ahead so that they fill the table for the main search.
+		List<Future<?>> running = new ArrayList<Future<?>>();
+		startHelpers();
+		for (int i = 0; i < helperSearches.length; i++) {
+			final Search helper = helperSearches[i];
+			final CCBoard helperBoard = (CCBoard) board.clone();
+			final int firstDepth = 1 + (i % 2);
+			final int lastDepth = maxDepth;
+			helper.nodes = 0;
+			running.add(helpers.submit(new Runnable() {
+				@Override
+				public void run() {
+					helper.iterate(helperBoard, firstDepth, lastDepth, Long.MAX_VALUE, 0);
+				}
+			}));
+		}
+
+		mainSearch.nodes = 0;
+		Pair<Double, BoardPointPair> result;
+		try {
+			result = mainSearch.iterate(board, 1, maxDepth, startTime, timeout);
+		} finally {
+			// Stop the helpers and wait for them to leave the table alone.
+			stopped = true;
+			for (Future<?> f : running) {
+				try {
+					f.get();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		lastCompletedDepth = mainSearch.completedDepth;
+		return result;
+	}
+
+	private void startHelpers() {
+		if (helperSearches.length != threads - 1) {
+			if (helpers != null) {
+				helpers.shutdownNow();
+				helpers = null;
+			}
+			helperSearches = new Search[threads - 1];
+			for (int i = 0; i < helperSearches.length; i++) {
+				helperSearches[i] = new Search();
+			}
+		}
+		if (helpers == null && helperSearches.length > 0) {
+			helpers = Executors.newFixedThreadPool(helperSearches.length, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, getName() + "-helper");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the nodes visited by all threads in the last search
+	 */
+	public long getNodes() {
+		long total = mainSearch.nodes;
+		for (Search s : helperSearches) {
+			total += s.nodes;
+		}
+		return total;
+	}
+
+	/**
+	 * @return the depth of the last completed iteration of the last search
+	 */
+	public int getCompletedDepth() {
+		return lastCompletedDepth;
+	}
+
+	private boolean isStopped() {
+		Ponderer.Job job = ponderJob;
+		return stopped || (job != null && job.isCancelled());
+	}
+
+	@Override
+	public void gameStarted(String msg) {
+		super.gameStarted(msg);
+		if (ponder) {
+			if (ponderer == null) {
+				ponderer = new Ponderer(this, new Ponderer.Search() {
+					@Override
+					public CCBoard target(CCBoard board) {
+						return ponderer.predict(board);
+					}
+
+					@Override
+					public void ponder(CCBoard target, Ponderer.Job job) {
+						search(target, MAX_DEPTH, 0, job);
+					}
+				});
+			}
+			ponderer.gameStarted();
+		}
+	}
+
+	@Override
+	public void gameOver(String msg) {
+		if (ponderer != null) {
+			ponderer.shutdown();
+		}
+		if (helpers != null) {
+			helpers.shutdownNow();
+			helpers = null;
+		}
+		super.gameOver(msg);
+	}
 
 	/**
 	 * Generate a set of all points in the bases
@@ -133,111 +364,241 @@ public class CCMiniMaxPlayer extends Player {
 	
 	@Override
 	public void movePlayed(Board board, Move move) {
+		if (ponderer != null && ponder) {
+			ponderer.movePlayed(board);
+		}
 	}
 	
 	public Pair<Double, BoardPointPair> minimax(CCBoard startBoard, CCBoard originalBoard, int depth, boolean isMaximizing,
 			Pair<Double, BoardPointPair> a, Pair<Double, BoardPointPair> b, int context) {
-		if (depth == 0) {
-			return new Pair<Double, BoardPointPair>(evaluateBoard(startBoard, originalBoard, context), null);
-		}
-		if (startBoard.getWinner() != Board.NOBODY) {
-			return new Pair<Double, BoardPointPair>(evaluateBoard(startBoard, originalBoard, context), null);
-		}
-		
-		Pair<Double, BoardPointPair> val;
-		// If the board isn't player 1 or 3, don't need to use combined move generator
-		Iterator<BoardPointPair> iterator = null;
-		int depthDiff = 0;
-		if (startBoard.getTurn() == 0 || startBoard.getTurn() == 2 || depth == 1) {
-			iterator = new MoveGenerator(startBoard, startBoard.getTurn());
-			depthDiff = 1;
-		} else {
-			iterator = new CombinedMoveGenerator(startBoard, startBoard.getTurn());
-			depthDiff = 2;
-		}
+		return mainSearch.minimax(startBoard, originalBoard, depth, isMaximizing, a, b, context);
+	}
 
-		if (isMaximizing) {
-			while (iterator.hasNext()) {
-				BoardPointPair pair = iterator.next();
-				val = minimax(pair.getBoard(), originalBoard, depth - depthDiff, false, a, b, context);
-				if (val.getFirst() > a.getFirst()) {
-					a = new Pair<Double, BoardPointPair>(val.getFirst(), pair);
-				}			
-				if (b.getFirst() <= a.getFirst()) {
+	/**
+	 * The state of one search thread.
+	 */
+	private class Search {
+		private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		private long nodes;
+		private int completedDepth;
+
+		/**
+		 * Deepen until we run out of time. The best moves of each iteration
+		 * are kept in the table, so the next iteration searches them first.
+		 * A timeout of 0 searches until the search is stopped.
+		 */
+		private Pair<Double, BoardPointPair> iterate(CCBoard board, int firstDepth, int maxDepth, long startTime, long timeout) {
+			Pair<Double, BoardPointPair> best = new Pair<Double, BoardPointPair>(0.0 + Integer.MIN_VALUE, null);
+			completedDepth = 0;
+			// The nodes of the last two iterations before the current one
+			long lastNodes = 0, beforeLastNodes = 0;
+			for (int depth = firstDepth; depth <= maxDepth && !isStopped(); depth++) {
+				long iterationStart = System.currentTimeMillis();
+				long nodesBefore = nodes;
+				Pair<Double, BoardPointPair> result;
+				try {
+					result = minimax(board, board, depth, true,
+							new Pair<Double,BoardPointPair>(0.0 + Integer.MIN_VALUE, null),
+							new Pair<Double,BoardPointPair>(0.0 + Integer.MAX_VALUE, null),
+							playerID
+						);
+				} catch (SearchTimeout e) {
 					break;
 				}
-			}
-			return a;
-		} else {
-			while (iterator.hasNext()) {
-				BoardPointPair pair = iterator.next();
-				if (pair == null) throw new RuntimeException();
-				val = minimax(pair.getBoard(), originalBoard, depth - depthDiff, true, a, b, context);
-				if (val.getFirst() < b.getFirst()) {
-					b = new Pair<Double, BoardPointPair>(val.getFirst(), pair);
-				}
-				if (b.getFirst() <= a.getFirst()) {
+				best = result;
+				completedDepth = depth;
+				// Stop once the game is decided either way.
+				if (Math.abs(result.getFirst()) >= Integer.MAX_VALUE) {
 					break;
 				}
-			}			
-			return b;
-		}
-	}
-	
-	private void generateMoveSequence(CCBoard board, Point from, Point to) {
-		HashSet<Point> visited = new HashSet<Point>(100);
-		visited.add(from);
-		ArrayList<Point> points = new ArrayList<Point>(100);
-		points.add(from);
-		generateMoveSequence(board, from, to, visited, points);
-	}
-	
-	/**
-	 * This fills the move list with a sequence of moves from one point to another.
-	 * @param board The board.
-	 * @param from Initial starting point.
-	 * @param to End point.
-	 */
-	private boolean generateMoveSequence(CCBoard board, Point from, Point to, Set<Point> visitedPoints, List<Point> points) {
-		// If we've reached the end, then generate all the moves
-		if (from.equals(to)) {
-			Point lastPoint = null;
-			for (Point p : points) {
-				if (lastPoint != null) {
-					moveList.add(new CCMove(playerID, lastPoint, p));
+				long iterationNodes = nodes - nodesBefore;
+				if (timeout > 0) {
+					// Only the first iteration is guaranteed to finish. Don't start
+					// another one if it is unlikely to complete in the time left.
+					// The growth alternates between the plies of our turns and
+					// those of the others, so the next iteration grows by about
+					// as much as the one before the last did. Until there are
+					// enough iterations to tell, only start while less than half
+					// of the time is spent.
+					long now = System.currentTimeMillis();
+					deadline = startTime + timeout;
+					if (beforeLastNodes > 0) {
+						double growth = (double) lastNodes / beforeLastNodes;
+						if (now + (now - iterationStart) * growth > deadline) {
+							break;
+						}
+					} else if (now - startTime > timeout / 2) {
+						break;
+					}
 				}
-				lastPoint = p;
+				beforeLastNodes = lastNodes;
+				lastNodes = iterationNodes;
 			}
-			
-			// Add last move
-			moveList.add(new CCMove(playerID, null, null));
-			return true;
+			return best;
 		}
-		
-		for (int[] offset : DIRECTIONAL_OFFSETS) {
-			Point hopPoint = new Point(from.x + offset[0], from.y + offset[1]);
-			if (board.getPieceAt(hopPoint) == null) {
-				continue;
+
+		private Pair<Double, BoardPointPair> minimax(CCBoard startBoard, CCBoard originalBoard, int depth, boolean isMaximizing,
+				Pair<Double, BoardPointPair> a, Pair<Double, BoardPointPair> b, int context) {
+			if ((++nodes & 0xFF) == 0 && (isStopped() || System.currentTimeMillis() > deadline)) {
+				throw SEARCH_TIMEOUT;
+			}
+			if (depth == 0) {
+				return new Pair<Double, BoardPointPair>(evaluateBoard(startBoard, originalBoard, context), null);
+			}
+			if (startBoard.getWinner() != Board.NOBODY) {
+				return new Pair<Double, BoardPointPair>(evaluateBoard(startBoard, originalBoard, context), null);
 			}
 			
-			Point newPoint = new Point(from.x + offset[0] * 2, from.y + offset[1] * 2);
-			// If in range, not visited, and empty
-			if (newPoint.x >= 0 && newPoint.y >= 0 && newPoint.x < 16 && newPoint.y < 16) {
-				if (board.getPieceAt(newPoint) == null && !visitedPoints.contains(newPoint)) {
-					// Test that if you are going out of the friend's base, which is illegal
-					if (!BASES[FRIEND[playerID]].contains(from) || BASES[FRIEND[playerID]].contains(newPoint)) {
-						visitedPoints.add(newPoint);
-						// Visit the point
-						points.add(newPoint);
-						if (generateMoveSequence(board, newPoint, to, visitedPoints, points)) {
-							return true;
-						}
-						points.remove(points.size() - 1);
+			// Look the position up in the transposition table. At the root we
+			// need an actual move, so only use the entry for move ordering.
+			boolean isRoot = startBoard == originalBoard;
+			long key = positionKey(startBoard, isMaximizing);
+			boolean found = table.probe(key, entry);
+			int bestInitial = TranspositionTable.NO_SQUARE;
+			int bestDestination = TranspositionTable.NO_SQUARE;
+			if (found) {
+				bestInitial = entry.initial;
+				bestDestination = entry.destination;
+				if (!isRoot && entry.depth == depth) {
+					double score = entry.score;
+					if (entry.bound == TranspositionTable.EXACT) {
+						score = isMaximizing ? Math.max(score, a.getFirst()) : Math.min(score, b.getFirst());
+						return new Pair<Double, BoardPointPair>(score, null);
+					} else if (entry.bound == TranspositionTable.LOWER && score >= b.getFirst()) {
+						return new Pair<Double, BoardPointPair>(isMaximizing ? score : b.getFirst(), null);
+					} else if (entry.bound == TranspositionTable.UPPER && score <= a.getFirst()) {
+						return new Pair<Double, BoardPointPair>(isMaximizing ? a.getFirst() : score, null);
+					}
+				}
+			}
+			double alpha = a.getFirst();
+			double beta = b.getFirst();
+			
+			Pair<Double, BoardPointPair> val;
+			// If the board isn't player 1 or 3, don't need to use combined move generator
+			Iterator<BoardPointPair> iterator = null;
+			int depthDiff = 0;
+			if (startBoard.getTurn() == 0 || startBoard.getTurn() == 2 || depth == 1) {
+				MoveGenerator generator = new MoveGenerator(startBoard, startBoard.getTurn());
+				depthDiff = 1;
+				// Search the best move of the stored entry first
+				if (bestInitial != TranspositionTable.NO_SQUARE && bestDestination != TranspositionTable.NO_SQUARE) {
+					generator.searchFirst(bestInitial, bestDestination);
+				}
+				iterator = generator;
+			} else {
+				iterator = new CombinedMoveGenerator(startBoard, startBoard.getTurn());
+				depthDiff = 2;
+			}
+
+			BoardPointPair best = null;
+			double result;
+			if (isMaximizing) {
+				while (iterator.hasNext()) {
+					BoardPointPair pair = iterator.next();
+					val = minimax(pair.getBoard(), originalBoard, depth - depthDiff, false, a, b, context);
+					if (val.getFirst() > a.getFirst()) {
+						a = new Pair<Double, BoardPointPair>(val.getFirst(), pair);
+						best = pair;
+					}			
+					if (b.getFirst() <= a.getFirst()) {
+						break;
+					}
+				}
+				result = a.getFirst();
+			} else {
+				while (iterator.hasNext()) {
+					BoardPointPair pair = iterator.next();
+					if (pair == null) throw new RuntimeException();
+					val = minimax(pair.getBoard(), originalBoard, depth - depthDiff, true, a, b, context);
+					if (val.getFirst() < b.getFirst()) {
+						b = new Pair<Double, BoardPointPair>(val.getFirst(), pair);
+						best = pair;
+					}
+					if (b.getFirst() <= a.getFirst()) {
+						break;
 					}
 				}
+				result = b.getFirst();
+			}
+
+			// Record the result along with the kind of bound it is
+			int bound;
+			if (result >= beta) {
+				bound = TranspositionTable.LOWER;
+			} else if (result <= alpha) {
+				bound = TranspositionTable.UPPER;
+			} else {
+				bound = TranspositionTable.EXACT;
+			}
+			if (best != null && best.getInitial() != null && best.getDestination() != null) {
+				bestInitial = CCBoard.squareOf(best.getInitial().x, best.getInitial().y);
+				bestDestination = CCBoard.squareOf(best.getDestination().x, best.getDestination().y);
 			}
+			table.store(key, depth, bound, result, bestInitial, bestDestination);
+			
+			return isMaximizing ? a : b;
+		}
+	}
+
+	/**
+	 * @return the transposition table key of a position in the current search.
+	 */
+	private long positionKey(CCBoard board, boolean isMaximizing) {
+		// The turn counter is not part of the board hash but changes the
+		// evaluation, so mix it in as well.
+		return board.hash() ^ searchSalt ^ mix(board.getTurnsPlayed() * 2 + (isMaximizing ? 1 : 0));
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * @return the transposition table, or null before the first search.
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return table;
+	}
+
+	/**
+	 * Allocate the evaluation cache if it is enabled, before the search
+	 * threads share it.
+	 */
+	private void initEvaluationCache() {
+		if (evaluationCache == null && evaluationCacheSize > 0) {
+			evaluationCache = new EvaluationCache(evaluationCacheSize);
+		}
+	}
+
+	/**
+	 * @param entries the number of evaluations to keep, 0 to disable the cache
+	 */
+	public void setEvaluationCacheSize(int entries) {
+		if (entries < 0) throw new IllegalArgumentException("Negative cache size");
+		this.evaluationCacheSize = entries;
+		this.evaluationCache = null;
+	}
+
+	/**
+	 * @return the evaluation cache, or null if it is disabled or not allocated yet.
+	 */
+	public EvaluationCache getEvaluationCache() {
+		return evaluationCache;
+	}
+	
+	/**
+	 * Thrown to abandon an iteration once the deadline has passed.
+	 */
+	private static class SearchTimeout extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
 		}
-		return false;
 	}
 	
 	public class Pair<A, B> {
@@ -269,11 +630,25 @@ public class CCMiniMaxPlayer extends Player {
 		}
 
 		// Sum up the result for all features
-		double result = 0;
-		for (Feature feature : features) {
-			result += (feature.getWeight(board, originalBoard, context) * feature.getScore(board, originalBoard, context));
+		LinearEvaluator evaluator = this.evaluator;
+		EvaluationCache cache = evaluationCache;
+		if (evaluator == null || evaluator.getFeatures() != features) {
+			evaluator = LinearEvaluator.compile(features);
+			this.evaluator = evaluator;
+			// Values of the old features must not be returned
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+		if (cache == null) {
+			return evaluator.evaluate(board, originalBoard, context);
+		}
+		long key = EvaluationCache.key(board, originalBoard, context);
+		double result = cache.get(key);
+		if (Double.isNaN(result)) {
+			result = evaluator.evaluate(board, originalBoard, context);
+			cache.put(key, result);
 		}
-		
 		return result;
 	}
 		
@@ -0,0 +1,53 @@
+package halma;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+/**
+ * Storage backend for the pieces of a CCBoard.
+ * Squares are indexed as x + y * CCBoard.SIZE, see CCBoard.squareOf().
+ * Callers are expected to only pass squares which are on the board.
+ */
+public interface CCPieceStore {
+
+	/** Returned by get() when no piece is found on a square. */
+	int EMPTY = -1;
+
+	/**
+	 * @param square the square to check
+	 * @return the player_id of the piece on the square, or EMPTY.
+	 */
+	int get(int square);
+
+	/**
+	 * Place a piece on an empty square.
+	 * @param square the square to place the piece on
+	 * @param player_id the owner of the piece
+	 */
+	void put(int square, int player_id);
+
+	/**
+	 * Remove the piece on a square.
+	 * @param square the square to clear
+	 */
+	void remove(int square);
+
+	/**
+	 * Add the squares of all pieces belonging to a player to an array.
+	 * @param player_id the player ID
+	 * @param squares the array to fill, must hold at least 13 elements
+	 * @return the number of squares written
+	 */
+	int getPieceSquares(int player_id, int[] squares);
+
+	/**
+	 * @param player_id the player ID
+	 * @return a list of all pieces belonging to player_id
+	 */
+	ArrayList<Point> getPieces(int player_id);
+
+	/**
+	 * @return an independent copy of this store.
+	 */
+	CCPieceStore copy();
+}
@@ -4,6 +4,7 @@ import halma.minimax.features.AdjacentToBaseFeature;
 import halma.minimax.features.DontLeaveAloneFeature;
 import halma.minimax.features.Feature;
 import halma.minimax.features.LeaveBaseFeature;
+import halma.minimax.features.LinearEvaluator;
 import halma.minimax.features.ManhattanDistanceFeature;
 import halma.minimax.features.NotInGoalZoneFeature;
 
@@ -30,6 +31,9 @@ public class CCSimulatedAnnealingPlayer extends Player {
     		new AdjacentToBaseFeature(0.05) 
     );
 
+    // The features compiled into one pass, rebuilt when the list changes
+    private LinearEvaluator evaluator;
+
     private static final int TOTAL_TIME_ALLOWED = 200;
 	private static final int[][] OPPONENT = {{1,2},{0,3},{0,3},{1,2}};
 	private Random random = new Random();
@@ -105,17 +109,17 @@ public class CCSimulatedAnnealingPlayer extends Player {
         	}
         	
         	CCMove potentialMove = legalMoves.get(random.nextInt(legalMoves.size()));
-        	CCBoard potentialBoard = (CCBoard)board.clone();
-        	potentialBoard.move(potentialMove);
+        	board.makeMove(potentialMove);
         	
         	// Get new score
-        	double newScore = evaluateBoard(potentialBoard);
+        	double newScore = evaluateBoard(board);
         	
-        	// First we test if we should move to it.
+        	// First we test if we should move to it, otherwise take the move back.
         	if (newScore > currentScore || Math.exp((newScore - currentScore) / temp) > random.nextDouble()) {
         		currentScore = newScore;
         		moves.add(potentialMove);
-        		board = potentialBoard;
+        	} else {
+        		board.unmakeMove();
         	}
         	
         	// Now we test if we've beat our best.
@@ -146,12 +150,12 @@ public class CCSimulatedAnnealingPlayer extends Player {
 		}
 
 		// Sum up the result for all features
-		double result = 0;
-		for (Feature feature : features) {
-			result += (feature.getWeight(board, originalBoard, playerID) * feature.getScore(board, originalBoard, playerID));
+		LinearEvaluator evaluator = this.evaluator;
+		if (evaluator == null || evaluator.getFeatures() != features) {
+			evaluator = LinearEvaluator.compile(features);
+			this.evaluator = evaluator;
 		}
-		
-		return result;
+		return evaluator.evaluate(board, originalBoard, playerID);
 	}
 	
 
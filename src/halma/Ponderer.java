@@ -0,0 +1,258 @@
+package halma;
+
+import halma.geometry.Geometry;
+import halma.minimax.TurnGenerator;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import boardgame.Board;
+import boardgame.Player;
+
+/**
+ * Thinks on a background thread while the other players choose their turns.
+ *
+ * The player passes the boards it receives in movePlayed() on. Whenever the
+ * turn of another player starts, the search is asked for the position to
+ * think about, its target. If it is the one already being thought about,
+ * the other player played as predicted and the search goes on. Otherwise
+ * the search is cancelled, and started again on the new target. Before
+ * choosing its own move, the player stops the search with finish(), which
+ * tells whether the last target was the actual position.
+ *
+ * The search decides what it keeps from a cancelled or finished run, like
+ * the transposition table of a minimax search or the tree of a Monte Carlo
+ * search.
+ */
+public class Ponderer {
+
+	/** Whether the players ponder, off by default as it takes a core. */
+	public static final boolean ENABLED = Boolean.getBoolean("halma.ponder");
+
+	/**
+	 * A search which can think about a position in the background.
+	 */
+	public interface Search {
+		/**
+		 * @param board the position at the start of another player's turn
+		 * @return the position to think about, or null for none. Called on
+		 * the thread of movePlayed(), while the last target may still be
+		 * searched.
+		 */
+		CCBoard target(CCBoard board);
+
+		/**
+		 * Think about a position until the job is cancelled, or until
+		 * there is nothing more to learn. Called on the ponder thread.
+		 */
+		void ponder(CCBoard target, Job job);
+	}
+
+	/**
+	 * One run of the search, cancelled once its target is stale.
+	 */
+	public static final class Job {
+		private volatile boolean cancelled;
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	private final Player player;
+	private final Search search;
+	private ExecutorService thread;
+	private Future<?> running;
+	private Job job;
+	private CCBoard target;
+	private int hits, misses;
+
+	// Reused by predict()
+	private final TurnGenerator generator = new TurnGenerator();
+	private final int[] path = new int[CCBoard.SIZE * CCBoard.SIZE / 4 + 1];
+
+	/**
+	 * @param player the player pondering, whose turns are not pondered on
+	 * @param search the search to run
+	 */
+	public Ponderer(Player player, Search search) {
+		this.player = player;
+		this.search = search;
+	}
+
+	/**
+	 * Reset for a new game.
+	 */
+	public void gameStarted() {
+		stop();
+		target = null;
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * Follow the game. Call this from Player.movePlayed().
+	 * @param board the position after the move
+	 */
+	public void movePlayed(Board board) {
+		CCBoard b = (CCBoard) board;
+		if (b.getWinner() != Board.NOBODY) {
+			stop();
+			return;
+		}
+		// Only the start of a turn of another player changes the target
+		if (b.getLastMoved() != null || b.getTurn() == player.getColor()) {
+			return;
+		}
+		CCBoard next = search.target(b);
+		// Kept going, or done, if the prediction still holds
+		if (next != null && samePosition(next, target)) {
+			return;
+		}
+		stop();
+		target = next;
+		if (next == null) {
+			return;
+		}
+		if (thread == null) {
+			thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, player.getName() + "-ponder");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		final Job j = new Job();
+		final CCBoard t = next;
+		job = j;
+		running = thread.submit(new Runnable() {
+			@Override
+			public void run() {
+				search.ponder(t, j);
+			}
+		});
+	}
+
+	/**
+	 * Stop pondering before choosing a move.
+	 * @param board the actual position
+	 * @return true if the last target was this position
+	 */
+	public boolean finish(CCBoard board) {
+		stop();
+		if (target == null) {
+			return false;
+		}
+		boolean hit = samePosition(board, target);
+		if (hit) {
+			hits++;
+		} else {
+			misses++;
+		}
+		target = null;
+		return hit;
+	}
+
+	/**
+	 * Cancel the search and wait for it to stop.
+	 */
+	public void stop() {
+		if (running == null) {
+			return;
+		}
+		job.cancelled = true;
+		try {
+			running.get();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		running = null;
+		job = null;
+	}
+
+	/**
+	 * Stop and end the ponder thread. Call this from Player.gameOver().
+	 */
+	public void shutdown() {
+		stop();
+		if (thread != null) {
+			thread.shutdownNow();
+			thread = null;
+		}
+	}
+
+	/**
+	 * @return the number of turns the target was the actual position
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of turns it was not
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Predict the turns of the other players until it is ours again. Each
+	 * one plays the turn bringing a piece closest to its goal, as the
+	 * playouts of CCMCTSPlayer do. Not thread safe.
+	 * @param board the position at the start of a turn
+	 * @return the predicted position, a new board, or null if a player has
+	 * no turn to play
+	 */
+	public CCBoard predict(CCBoard board) {
+		CCBoard b = (CCBoard) board.clone();
+		while (b.getWinner() == Board.NOBODY && b.getTurn() != player.getColor()) {
+			int p = b.getTurn();
+			int count = generator.generate(b);
+			int[] turns = generator.getTurns();
+			int best = -1;
+			boolean pass = false;
+			double bestGain = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				if (turns[i] == TurnGenerator.PASS) {
+					pass = true;
+					continue;
+				}
+				double gain = Geometry.goalDistance(TurnGenerator.from(turns[i]), p)
+						- Geometry.goalDistance(TurnGenerator.to(turns[i]), p);
+				if (gain > bestGain) {
+					bestGain = gain;
+					best = i;
+				}
+			}
+			if (best < 0) {
+				if (!pass) {
+					return null;
+				}
+				b.move(new CCMove(p, null, null));
+				continue;
+			}
+			int length = TurnGenerator.getPath(turns, generator.getLinks(), best, path);
+			for (int j = 1; j < length; j++) {
+				b.move(new CCMove(p, CCBoard.pointOf(path[j - 1]), CCBoard.pointOf(path[j])));
+			}
+			if (TurnGenerator.isHop(turns[best])) {
+				b.move(new CCMove(p, null, null));
+			}
+		}
+		return b;
+	}
+
+	private static boolean samePosition(CCBoard a, CCBoard b) {
+		return b != null && a.hash() == b.hash() && a.getTurn() == b.getTurn()
+				&& a.getTurnsPlayed() == b.getTurnsPlayed();
+	}
+
+	@Override
+	public String toString() {
+		return "ponder hits " + hits + "/" + (hits + misses);
+	}
+}
@@ -0,0 +1,178 @@
+package halma.geometry;
+
+import halma.CCBoard;
+
+import java.awt.Point;
+
+/**
+ * Precomputed board geometry shared by all players and features.
+ *
+ * Squares are indexed as x + y * CCBoard.SIZE, see CCBoard.squareOf(). The
+ * tables are flat primitive arrays, built once on first use and never
+ * changed afterwards. Distances are computed exactly as the features used
+ * to, so scores do not change.
+ */
+public final class Geometry {
+
+	public static final int SIZE = CCBoard.SIZE;
+	public static final int SQUARES = SIZE * SIZE;
+	public static final int DIRECTIONS = 8;
+
+	/** Distance to an opponent's corner within which a piece counts as near it, see nearOpponents(). */
+	public static final double OPPONENT_RADIUS = 5;
+
+	/** Returned by step() and hop() when the square is off the board. */
+	public static final int NONE = -1;
+
+	private static final int[][] OFFSETS = {{1,1}, {1,0}, {1,-1}, {0,-1}, {-1,-1}, {-1,0}, {-1,1}, {0,1}};
+
+	// The home corner of each base
+	private static final Point[] CORNERS = {
+		new Point(0, 0),
+		new Point(SIZE - 1, 0),
+		new Point(0, SIZE - 1),
+		new Point(SIZE - 1, SIZE - 1)
+	};
+
+	private Geometry() {
+	}
+
+	/**
+	 * The tables, built when first used.
+	 */
+	private static final class Tables {
+		// Euclidean distance by |dx| * SIZE + |dy|
+		static final double[] DISTANCE = new double[SIZE * SIZE];
+		// Euclidean and manhattan distance to the corner of a base, by base * SQUARES + square
+		static final double[] CORNER_DISTANCE = new double[CCBoard.NUMBER_OF_PLAYERS * SQUARES];
+		static final int[] CORNER_MANHATTAN = new int[CCBoard.NUMBER_OF_PLAYERS * SQUARES];
+		// Adjacent square and the square behind it, by square * DIRECTIONS + direction
+		static final int[] STEPS = new int[SQUARES * DIRECTIONS];
+		static final int[] HOPS = new int[SQUARES * DIRECTIONS];
+		// Base membership, by base * SQUARES + square
+		static final boolean[] IN_BASE = new boolean[CCBoard.NUMBER_OF_PLAYERS * SQUARES];
+		// Within OPPONENT_RADIUS of an opponent's corner, by player * SQUARES + square
+		static final boolean[] NEAR_OPPONENTS = new boolean[CCBoard.NUMBER_OF_PLAYERS * SQUARES];
+
+		static {
+			for (int dx = 0; dx < SIZE; dx++) {
+				for (int dy = 0; dy < SIZE; dy++) {
+					DISTANCE[dx * SIZE + dy] = Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
+				}
+			}
+			for (int base = 0; base < CCBoard.NUMBER_OF_PLAYERS; base++) {
+				Point corner = CORNERS[base];
+				for (int sq = 0; sq < SQUARES; sq++) {
+					int dx = Math.abs(x(sq) - corner.x), dy = Math.abs(y(sq) - corner.y);
+					CORNER_DISTANCE[base * SQUARES + sq] = DISTANCE[dx * SIZE + dy];
+					CORNER_MANHATTAN[base * SQUARES + sq] = dx + dy;
+				}
+				for (Point p : CCBoard.bases[base]) {
+					IN_BASE[base * SQUARES + CCBoard.squareOf(p.x, p.y)] = true;
+				}
+			}
+			for (int sq = 0; sq < SQUARES; sq++) {
+				for (int player = 0; player < CCBoard.NUMBER_OF_PLAYERS; player++) {
+					for (int base = 0; base < CCBoard.NUMBER_OF_PLAYERS; base++) {
+						if (CCBoard.getTeamIndex(base) != CCBoard.getTeamIndex(player)
+								&& CORNER_DISTANCE[base * SQUARES + sq] <= OPPONENT_RADIUS) {
+							NEAR_OPPONENTS[player * SQUARES + sq] = true;
+						}
+					}
+				}
+				for (int d = 0; d < DIRECTIONS; d++) {
+					STEPS[sq * DIRECTIONS + d] = squareOrNone(x(sq) + OFFSETS[d][0], y(sq) + OFFSETS[d][1]);
+					HOPS[sq * DIRECTIONS + d] = squareOrNone(x(sq) + 2 * OFFSETS[d][0], y(sq) + 2 * OFFSETS[d][1]);
+				}
+			}
+		}
+
+		private static int squareOrNone(int x, int y) {
+			if (x < 0 || y < 0 || x >= SIZE || y >= SIZE) {
+				return NONE;
+			}
+			return CCBoard.squareOf(x, y);
+		}
+	}
+
+	public static int x(int square) {
+		return square % SIZE;
+	}
+
+	public static int y(int square) {
+		return square / SIZE;
+	}
+
+	/**
+	 * @return the euclidean distance between two squares
+	 */
+	public static double distance(int a, int b) {
+		return Tables.DISTANCE[Math.abs(x(a) - x(b)) * SIZE + Math.abs(y(a) - y(b))];
+	}
+
+	/**
+	 * @return the manhattan distance between two squares
+	 */
+	public static int manhattan(int a, int b) {
+		return Math.abs(x(a) - x(b)) + Math.abs(y(a) - y(b));
+	}
+
+	/**
+	 * @return the euclidean distance from a square to the corner of a base
+	 */
+	public static double cornerDistance(int square, int base) {
+		return Tables.CORNER_DISTANCE[base * SQUARES + square];
+	}
+
+	/**
+	 * @return the euclidean distance from a square to the far corner of the
+	 * player's goal base
+	 */
+	public static double goalDistance(int square, int player_id) {
+		return Tables.CORNER_DISTANCE[(player_id ^ 3) * SQUARES + square];
+	}
+
+	/**
+	 * @return the manhattan distance from a square to the far corner of the
+	 * player's goal base
+	 */
+	public static int goalManhattan(int square, int player_id) {
+		return Tables.CORNER_MANHATTAN[(player_id ^ 3) * SQUARES + square];
+	}
+
+	/**
+	 * @return the adjacent square in a direction, or NONE
+	 */
+	public static int step(int square, int direction) {
+		return Tables.STEPS[square * DIRECTIONS + direction];
+	}
+
+	/**
+	 * @return the square two steps away in a direction, or NONE
+	 */
+	public static int hop(int square, int direction) {
+		return Tables.HOPS[square * DIRECTIONS + direction];
+	}
+
+	/**
+	 * @return true if the square is in the base
+	 */
+	public static boolean inBase(int square, int base) {
+		return Tables.IN_BASE[base * SQUARES + square];
+	}
+
+	/**
+	 * @return true if the square is in the goal base of the player
+	 */
+	public static boolean inGoal(int square, int player_id) {
+		return Tables.IN_BASE[(player_id ^ 3) * SQUARES + square];
+	}
+
+	/**
+	 * @return true if the square is within OPPONENT_RADIUS of the corner of
+	 * a base of the other team
+	 */
+	public static boolean nearOpponents(int square, int player_id) {
+		return Tables.NEAR_OPPONENTS[player_id * SQUARES + square];
+	}
+}
@@ -1,14 +1,18 @@
 package halma.minimax;
 
 import halma.CCBoard;
+import halma.CCMove;
 
 import java.awt.Point;
+import java.util.Collection;
 
 public class BoardPointPair {
 	
 	private CCBoard board;
 	private Point initial;
 	private Point destination;
+	// The squares passed through from initial to destination, see CCBoard.squareOf()
+	private int[] path;
 	
 	public BoardPointPair(CCBoard board, Point initial, Point destination) {
 		super();
@@ -16,6 +20,14 @@ public class BoardPointPair {
 		this.initial = initial;
 		this.destination = destination;
 	}
+
+	/**
+	 * @param path the squares of the turn from initial to destination
+	 */
+	public BoardPointPair(CCBoard board, Point initial, Point destination, int[] path) {
+		this(board, initial, destination);
+		this.path = path;
+	}
 	public CCBoard getBoard() {
 		return board;
 	}
@@ -35,6 +47,36 @@ public class BoardPointPair {
 	public void setInitial(Point initial) {
 		this.initial = initial;
 	}
+	/**
+	 * @return the squares from initial to destination, or null if not known
+	 */
+	public int[] getPath() {
+		return path;
+	}
+	public void setPath(int[] path) {
+		this.path = path;
+	}
+
+	/**
+	 * Add the moves playing this turn to a collection, ending the turn
+	 * after a hop. A step needs no path.
+	 * @param player_id the player making the moves
+	 * @param moves the collection to add to
+	 * @throws IllegalStateException if the turn is a hop without a path
+	 */
+	public void addMoves(int player_id, Collection<CCMove> moves) {
+		if (!isHop()) {
+			moves.add(new CCMove(player_id, initial, destination));
+			return;
+		}
+		if (path == null) {
+			throw new IllegalStateException("No path from " + initial + " to " + destination);
+		}
+		for (int i = 1; i < path.length; i++) {
+			moves.add(new CCMove(player_id, CCBoard.pointOf(path[i - 1]), CCBoard.pointOf(path[i])));
+		}
+		moves.add(new CCMove(player_id, null, null));
+	}
 	
 	public boolean isHop() {
 		return Math.abs(initial.x - destination.x) > 1 || Math.abs(initial.y - destination.y) > 1;
@@ -39,6 +39,7 @@ public class CombinedMoveGenerator implements Iterator<BoardPointPair> {
 		// Only keep the board of the new board point pair.
 		v.setInitial(innerContext.getInitial());
 		v.setDestination(innerContext.getDestination());
+		v.setPath(innerContext.getPath());
 		return v;
 	}
 
@@ -0,0 +1,186 @@
+package halma.minimax;
+
+import halma.CCBoard;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size cache of board evaluations, shared by the search threads of a
+ * player.
+ *
+ * Entries are kept in buckets of four slots and evicted with the clock
+ * algorithm: a hit marks its slot as referenced, and a store into a full
+ * bucket moves the bucket's hand past referenced slots, clearing their mark,
+ * up to the first one that is not. Like the transposition table, each slot is
+ * two longs (check, value) written without locking, where check is the key
+ * xor'ed with the value, so a torn write is seen as a miss.
+ */
+public class EvaluationCache {
+
+	private static final int SLOTS_PER_BUCKET = 4;
+
+	private final long[] table;
+	// Clock state, racy updates only cost a slightly worse eviction
+	private final boolean[] referenced;
+	private final byte[] hands;
+	private final int bucketMask;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param entries the number of entries, rounded up to a power of two and
+	 * at least one bucket.
+	 */
+	public EvaluationCache(int entries) {
+		int buckets = Math.max(1, entries / SLOTS_PER_BUCKET);
+		int size = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+		this.bucketMask = size - 1;
+		this.table = new long[size * SLOTS_PER_BUCKET * 2];
+		this.referenced = new boolean[size * SLOTS_PER_BUCKET];
+		this.hands = new byte[size];
+	}
+
+	/**
+	 * Get the key of an evaluation. Besides the position, it covers what the
+	 * features may look at: the root board of the search, the player
+	 * evaluated for and the turn counter, which is not part of the board
+	 * hash.
+	 * @param board the board evaluated
+	 * @param original the root board of the search
+	 * @param playerID the player evaluated for
+	 * @return the key, never 0
+	 */
+	public static long key(CCBoard board, CCBoard original, int playerID) {
+		long key = board.hash() ^ mix(original.hash() ^ mix(board.getTurnsPlayed() * CCBoard.NUMBER_OF_PLAYERS + playerID + 1));
+		// 0 is the check word of an empty slot
+		return key == 0 ? 1 : key;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Look up an evaluation.
+	 * @param key the key, see key()
+	 * @return the value, or Double.NaN if it is not cached
+	 */
+	public double get(long key) {
+		int base = bucketIndex(key);
+		for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+			int slot = base + i;
+			long check = table[slot * 2];
+			long value = table[slot * 2 + 1];
+			if ((check ^ value) == key) {
+				referenced[slot] = true;
+				hits.increment();
+				return Double.longBitsToDouble(value);
+			}
+		}
+		misses.increment();
+		return Double.NaN;
+	}
+
+	/**
+	 * Store an evaluation.
+	 * @param key the key, see key()
+	 * @param value the value, not NaN
+	 */
+	public void put(long key, double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		int bucket = (int) ((key ^ (key >>> 32)) & bucketMask);
+		int base = bucket * SLOTS_PER_BUCKET;
+
+		// The same key, or else an empty slot
+		int target = -1;
+		for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+			int slot = base + i;
+			long check = table[slot * 2];
+			long stored = table[slot * 2 + 1];
+			if ((check ^ stored) == key) {
+				target = slot;
+				break;
+			}
+			if (target < 0 && check == 0 && stored == 0) {
+				target = slot;
+			}
+		}
+
+		// Otherwise the first slot not referenced since the hand last passed it
+		if (target < 0) {
+			int hand = hands[bucket];
+			while (referenced[base + hand]) {
+				referenced[base + hand] = false;
+				hand = (hand + 1) % SLOTS_PER_BUCKET;
+			}
+			target = base + hand;
+			hands[bucket] = (byte) ((hand + 1) % SLOTS_PER_BUCKET);
+			evictions.increment();
+		}
+
+		table[target * 2] = key ^ bits;
+		table[target * 2 + 1] = bits;
+		referenced[target] = false;
+		stores.increment();
+	}
+
+	private int bucketIndex(long key) {
+		return (int) ((key ^ (key >>> 32)) & bucketMask) * SLOTS_PER_BUCKET;
+	}
+
+	/**
+	 * @return the number of entries the cache holds
+	 */
+	public int getCapacity() {
+		return referenced.length;
+	}
+
+	/**
+	 * Remove all entries and reset the counters.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		Arrays.fill(referenced, false);
+		Arrays.fill(hands, (byte) 0);
+		hits.reset();
+		misses.reset();
+		stores.reset();
+		evictions.reset();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getStores() {
+		return stores.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the share of lookups which were hits, between 0 and 1
+	 */
+	public double getHitRate() {
+		long h = getHits(), m = getMisses();
+		return (h + m) == 0 ? 0.0 : (double) h / (h + m);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Eval cache hits: %d, misses: %d, evictions: %d, hit rate: %.1f%%",
+				getHits(), getMisses(), getEvictions(), 100.0 * getHitRate());
+	}
+}
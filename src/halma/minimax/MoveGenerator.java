@@ -3,103 +3,123 @@ package halma.minimax;
 import halma.CCBoard;
 import halma.CCMove;
 
-import java.awt.Point;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
-import java.util.Stack;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * This lazily generates moves for one player.
+ * This lazily generates the boards after each turn of one player.
+ * The turns are found up front by a TurnGenerator and returned in random
+ * order. Each board is made by replaying its turn on a copy of the start
+ * board, and the pair keeps the path of the turn for playing it later.
  */
 public class MoveGenerator implements Iterator<BoardPointPair>
 {
 
+	// The generator buffers are reused by all move generators of a thread
+	private static final ThreadLocal<TurnGenerator> GENERATOR = new ThreadLocal<TurnGenerator>() {
+		@Override
+		protected TurnGenerator initialValue() {
+			return new TurnGenerator();
+		}
+	};
+
 	private CCBoard startBoard;
 	private int player;
-	private Stack<BoardPointPair> boards = new Stack<BoardPointPair>();
-	private Queue<BoardPointPair> boardQueue = new LinkedList<>();
-	private HashMap<Point, Set<Point>> hoppedPoints = new HashMap<>(10);
-	
+	private int[] turns;
+	private int[] links;
+	// Indices of the turns not returned yet, in the first 'remaining' slots
+	private int[] order;
+	private int remaining;
+	// A turn to return before the others, or -1
+	private int first = -1;
+	private int[] path;
+
+	/**
+	 * @param startBoard the board at the start of the player's turn
+	 * @param player the player to move
+	 */
 	public MoveGenerator(CCBoard startBoard, int player) {
 		this.startBoard = startBoard;
 		this.player = player;
 
-		// Cache where each initial point has been to avoid rehopping to a point
-		for (Point p : startBoard.getPieces(player)) {
-			hoppedPoints.put(p, (Set)new HashSet<>());
-		}
-		
-		// Initialize the queue
-		ArrayList<CCMove> moves = startBoard.getLegalMoves();
-		Collections.shuffle(moves);
-		for (CCMove move : moves) {
-			// Create the board with the hop and end
-			CCBoard b = (CCBoard)startBoard.clone();
-			b.move(move);
-			BoardPointPair p = new BoardPointPair(b, move.getFrom(), move.getTo());
-			
-			if (move.isHop()) {
-				boardQueue.add(p);
-				// Add the board which ends after 1 hop.
-				BoardPointPair temp = new BoardPointPair((CCBoard)b.clone(), move.getFrom(), move.getTo());
-				temp.getBoard().move(new CCMove(player, null, null));
-				boards.add(temp);
-				// Register the initial in the set of moves we've went to
-				// to avoid hopping back
-				hoppedPoints.get(move.getFrom()).add(move.getTo());
-				hoppedPoints.get(move.getFrom()).add(move.getFrom());
-			} else {
-				boards.add(p);
-			}	
+		TurnGenerator generator = GENERATOR.get();
+		remaining = generator.generate(startBoard);
+		turns = Arrays.copyOf(generator.getTurns(), remaining);
+		links = Arrays.copyOf(generator.getLinks(), remaining);
+		order = new int[remaining];
+		for (int i = 0; i < remaining; i++) {
+			order[i] = i;
 		}
 	}
-	
-	private void generateBoardsFromPair(BoardPointPair pair) {
-		Point initial = pair.getInitial();
 
-		ArrayList<CCMove> moves = pair.getBoard().getLegalMoves();
-		Collections.shuffle(moves);
-		for (CCMove m : moves) {
-			// Don't go to a move if it's been done before
-			if (m.getTo() != null && m.getFrom() != null && !hoppedPoints.get(initial).contains(m.getTo())) {
-				//Clone the board with the move applied
-				CCBoard b = (CCBoard)pair.getBoard().clone();
-				b.move(m);
-				
-				// Add the board with the sequence over.
-				CCBoard b2 = (CCBoard)b.clone();
-				b2.move(new CCMove(player, null, null));
-				boards.add(new BoardPointPair(b2, initial, m.getTo()));
-				
-				// Sequence of hop is still going, add it to the visited points and continue
-				hoppedPoints.get(initial).add(m.getTo());
-				boardQueue.add(new BoardPointPair(b, initial, m.getTo()));
+	/**
+	 * Return a turn before the others if it is one of them, like the best
+	 * turn of a transposition table entry. Only the turns are searched, no
+	 * board is made before it is asked for.
+	 * @param from the square the piece starts from
+	 * @param to the square the piece ends on
+	 * @return true if the turn was found
+	 */
+	public boolean searchFirst(int from, int to) {
+		int turn = TurnGenerator.pack(from, to);
+		for (int i = 0; i < remaining; i++) {
+			if (turns[order[i]] == turn) {
+				first = order[i];
+				order[i] = order[--remaining];
+				return true;
 			}
 		}
+		return false;
 	}
-	
+
 	@Override
 	public boolean hasNext() {
-		// If no boards are currently loaded, iterate until we found some.
-		while (boards.isEmpty() && !boardQueue.isEmpty()) {
-			generateBoardsFromPair(boardQueue.remove());
-		}
-		return !boards.isEmpty();
+		return first >= 0 || remaining > 0;
 	}
 
 	@Override
 	public BoardPointPair next() {
 		if (!hasNext()) {
-			throw new RuntimeException();
+			throw new NoSuchElementException();
+		}
+		if (first >= 0) {
+			int index = first;
+			first = -1;
+			return createPair(index);
+		}
+		// Pick one of the remaining turns at random
+		int pick = ThreadLocalRandom.current().nextInt(remaining);
+		int index = order[pick];
+		order[pick] = order[--remaining];
+		return createPair(index);
+	}
+
+	/**
+	 * Play a turn on a copy of the start board.
+	 */
+	private BoardPointPair createPair(int index) {
+		CCBoard board = (CCBoard) startBoard.clone();
+		int turn = turns[index];
+		if (turn == TurnGenerator.PASS) {
+			board.move(new CCMove(player, null, null));
+			return new BoardPointPair(board, null, null);
+		}
+
+		if (path == null) {
+			path = new int[CCBoard.SIZE * CCBoard.SIZE / 4 + 1];
+		}
+		int length = TurnGenerator.getPath(turns, links, index, path);
+		for (int i = 1; i < length; i++) {
+			board.move(new CCMove(player, CCBoard.pointOf(path[i - 1]), CCBoard.pointOf(path[i])));
+		}
+		// A hop does not end the turn by itself
+		if (TurnGenerator.isHop(turn)) {
+			board.move(new CCMove(player, null, null));
 		}
-		// Return the first board
-		return boards.pop();
+		return new BoardPointPair(board, CCBoard.pointOf(TurnGenerator.from(turn)),
+				CCBoard.pointOf(TurnGenerator.to(turn)), Arrays.copyOf(path, length));
 	}
 
 	@Override
@@ -0,0 +1,167 @@
+package halma.minimax;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size transposition table for alpha-beta search.
+ *
+ * Each bucket holds two entries: a depth-preferred one, which is only replaced
+ * by deeper searches of the current generation, and an always-replace one.
+ * Entries are stored as three longs (check, score, data) without locking. The
+ * check word is the key xor'ed with the other two, so a torn write from another
+ * thread is seen as a miss instead of a wrong entry.
+ */
+public class TranspositionTable {
+
+	/** The score is the exact minimax value. */
+	public static final int EXACT = 0;
+	/** The score is a lower bound (the search failed high). */
+	public static final int LOWER = 1;
+	/** The score is an upper bound (the search failed low). */
+	public static final int UPPER = 2;
+
+	/** Square value used when no best move is stored. */
+	public static final int NO_SQUARE = 0x1FF;
+
+	private static final int LONGS_PER_ENTRY = 3;
+	private static final int ENTRIES_PER_BUCKET = 2;
+
+	private final long[] table;
+	private final int bucketMask;
+	private int generation;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+
+	/**
+	 * @param buckets the number of buckets, rounded up to a power of two.
+	 */
+	public TranspositionTable(int buckets) {
+		int size = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+		this.bucketMask = size - 1;
+		this.table = new long[size * ENTRIES_PER_BUCKET * LONGS_PER_ENTRY];
+	}
+
+	/**
+	 * Result holder for probe(), so that probing does not allocate.
+	 */
+	public static class Entry {
+		public double score;
+		public int depth;
+		public int bound;
+		public int initial;
+		public int destination;
+
+		/**
+		 * @return true if the entry has a best move.
+		 */
+		public boolean hasMove() {
+			return initial != NO_SQUARE && destination != NO_SQUARE;
+		}
+	}
+
+	/**
+	 * Mark the start of a new search, so that its entries take precedence
+	 * over deeper ones left by earlier searches.
+	 */
+	public void newSearch() {
+		generation = (generation + 1) & 0x3F;
+	}
+
+	/**
+	 * Look up a position.
+	 * @param key the position key
+	 * @param out filled with the entry if found
+	 * @return true if the position was found
+	 */
+	public boolean probe(long key, Entry out) {
+		int base = bucketIndex(key);
+		for (int i = 0; i < ENTRIES_PER_BUCKET; i++) {
+			int index = base + i * LONGS_PER_ENTRY;
+			long check = table[index];
+			long score = table[index + 1];
+			long data = table[index + 2];
+			if ((check ^ score ^ data) == key && data != 0) {
+				out.score = Double.longBitsToDouble(score);
+				out.depth = (int) (data & 0xFF);
+				out.bound = (int) ((data >>> 8) & 0x3);
+				out.initial = (int) ((data >>> 10) & 0x1FF);
+				out.destination = (int) ((data >>> 19) & 0x1FF);
+				hits.increment();
+				return true;
+			}
+		}
+		misses.increment();
+		return false;
+	}
+
+	/**
+	 * Store a search result.
+	 * @param key the position key
+	 * @param depth the remaining depth searched, at most 255
+	 * @param bound one of EXACT, LOWER or UPPER
+	 * @param score the score found
+	 * @param initial the square of the best move's piece, or NO_SQUARE
+	 * @param destination the square the best move ends on, or NO_SQUARE
+	 */
+	public void store(long key, int depth, int bound, double score, int initial, int destination) {
+		long data = (depth & 0xFF)
+				| ((long) bound << 8)
+				| ((long) (initial & 0x1FF) << 10)
+				| ((long) (destination & 0x1FF) << 19)
+				| ((long) generation << 28)
+				| (1L << 34);
+		long scoreBits = Double.doubleToRawLongBits(score);
+
+		int base = bucketIndex(key);
+		// Use the depth-preferred slot if it holds the same position, an older
+		// search, or a shallower result. Otherwise use the always-replace slot.
+		long storedData = table[base + 2];
+		boolean samePosition = (table[base] ^ table[base + 1] ^ storedData) == key;
+		int storedDepth = (int) (storedData & 0xFF);
+		int storedGeneration = (int) ((storedData >>> 28) & 0x3F);
+		int index = base;
+		if (!samePosition && storedData != 0 && storedGeneration == generation && storedDepth > depth) {
+			index = base + LONGS_PER_ENTRY;
+		}
+		table[index] = key ^ scoreBits ^ data;
+		table[index + 1] = scoreBits;
+		table[index + 2] = data;
+		stores.increment();
+	}
+
+	private int bucketIndex(long key) {
+		return (int) ((key ^ (key >>> 32)) & bucketMask) * ENTRIES_PER_BUCKET * LONGS_PER_ENTRY;
+	}
+
+	/**
+	 * Remove all entries and reset the counters.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		hits.reset();
+		misses.reset();
+		stores.reset();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getStores() {
+		return stores.sum();
+	}
+
+	@Override
+	public String toString() {
+		long h = getHits(), m = getMisses();
+		return String.format("TT hits: %d, misses: %d, stores: %d, hit rate: %.1f%%",
+				h, m, getStores(), (h + m) == 0 ? 0.0 : 100.0 * h / (h + m));
+	}
+}
@@ -0,0 +1,197 @@
+package halma.minimax;
+
+import halma.CCBoard;
+import halma.geometry.Geometry;
+
+/**
+ * Generates the complete turns of a player without touching the board.
+ *
+ * A turn is either a step to an adjacent square or a chain of hops with one
+ * piece, so the destinations of a piece are found with one flood fill over an
+ * occupancy grid. Each turn is packed into an int as (from << 8) | to, see
+ * pack(), or is PASS. All buffers are allocated once, so an instance
+ * should be reused, but not shared between threads.
+ *
+ * The rules are those of CCBoard.isLegal(): squares are visited at most once
+ * per turn, the moving piece leaves its square empty, and a piece in its
+ * goal base may not leave it.
+ */
+public class TurnGenerator {
+
+	/** Ending the turn without moving, only allowed once the player has won. */
+	public static final int PASS = -1;
+
+	/** Link of a turn which starts from the piece's square. */
+	public static final int NO_LINK = -1;
+
+	/** Upper bound on the number of turns of one position. */
+	public static final int MAX_TURNS = 13 * CCBoard.SIZE * CCBoard.SIZE + 1;
+
+	private static final int SQUARES = Geometry.SQUARES;
+	private static final int DIRECTIONS = Geometry.DIRECTIONS;
+
+	// Reusable buffers
+	private final boolean[] occupied = new boolean[SQUARES];
+	private final int[] occupiedSquares = new int[CCBoard.NUMBER_OF_PLAYERS * 13];
+	private final int[] pieces = new int[13];
+	private final int[] visited = new int[SQUARES];
+	private final int[] visitedTurn = new int[SQUARES];
+	private final int[] queue = new int[SQUARES];
+	private final int[] turns = new int[MAX_TURNS];
+	private final int[] links = new int[MAX_TURNS];
+	private int stamp;
+	private int count;
+
+	/**
+	 * Generate all turns of the player to move. The turn must not have
+	 * started yet.
+	 * @param board the position
+	 * @return the number of turns, see getTurns() and getLinks()
+	 */
+	public int generate(CCBoard board) {
+		if (board.getLastMoved() != null) {
+			throw new IllegalStateException("The turn has already started");
+		}
+		int player = board.getTurn();
+
+		int occupiedCount = 0;
+		for (int p = 0; p < CCBoard.NUMBER_OF_PLAYERS; p++) {
+			int n = board.getPieceSquares(p, pieces);
+			for (int i = 0; i < n; i++) {
+				occupied[pieces[i]] = true;
+				occupiedSquares[occupiedCount++] = pieces[i];
+			}
+		}
+
+		count = 0;
+		int pieceCount = board.getPieceSquares(player, pieces);
+		for (int i = 0; i < pieceCount; i++) {
+			int origin = pieces[i];
+			boolean fromGoal = Geometry.inGoal(origin, player);
+			// The piece leaves its square for the whole turn.
+			occupied[origin] = false;
+
+			// Steps
+			for (int d = 0; d < DIRECTIONS; d++) {
+				int to = Geometry.step(origin, d);
+				if (to != Geometry.NONE && !occupied[to] && (!fromGoal || Geometry.inGoal(to, player))) {
+					links[count] = NO_LINK;
+					turns[count++] = pack(origin, to);
+				}
+			}
+
+			// Hop chains, breadth first. Each square reached is a turn, linked
+			// to the turn ending on the square it was reached from.
+			stamp++;
+			visited[origin] = stamp;
+			visitedTurn[origin] = NO_LINK;
+			int head = 0, tail = 0;
+			queue[tail++] = origin;
+			while (head < tail) {
+				int from = queue[head++];
+				boolean inside = Geometry.inGoal(from, player);
+				for (int d = 0; d < DIRECTIONS; d++) {
+					int to = Geometry.hop(from, d);
+					if (to != Geometry.NONE && occupied[Geometry.step(from, d)] && !occupied[to]
+							&& visited[to] != stamp && (!inside || Geometry.inGoal(to, player))) {
+						visited[to] = stamp;
+						visitedTurn[to] = count;
+						links[count] = visitedTurn[from];
+						turns[count++] = pack(origin, to);
+						queue[tail++] = to;
+					}
+				}
+			}
+			occupied[origin] = true;
+		}
+
+		if (board.checkIfWin(player)) {
+			links[count] = NO_LINK;
+			turns[count++] = PASS;
+		}
+
+		for (int i = 0; i < occupiedCount; i++) {
+			occupied[occupiedSquares[i]] = false;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the turns of the last generate() call, valid until the next one
+	 */
+	public int[] getTurns() {
+		return turns;
+	}
+
+	/**
+	 * The links of the last generate() call, valid until the next one. The
+	 * link of a hop turn is the index of the turn ending on the square
+	 * hopped from, or NO_LINK for the first hop and for steps and PASS.
+	 */
+	public int[] getLinks() {
+		return links;
+	}
+
+	/**
+	 * @return the number of turns of the last generate() call
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the squares a turn passes through.
+	 * @param turns the turns
+	 * @param links the links of the turns
+	 * @param index the index of the turn, not a PASS
+	 * @param path filled with the squares from the piece's square to the
+	 * destination, must hold at least 65 elements
+	 * @return the number of squares written
+	 */
+	public static int getPath(int[] turns, int[] links, int index, int[] path) {
+		int moves = 0;
+		for (int i = index; i != NO_LINK; i = links[i]) {
+			moves++;
+		}
+		int at = moves;
+		for (int i = index; i != NO_LINK; i = links[i]) {
+			path[at--] = to(turns[i]);
+		}
+		path[0] = from(turns[index]);
+		return moves + 1;
+	}
+
+	/**
+	 * @return the turn from one square to another
+	 */
+	public static int pack(int from, int to) {
+		return from << 8 | to;
+	}
+
+	/**
+	 * @return the square the piece of a turn starts from
+	 */
+	public static int from(int turn) {
+		return turn >>> 8;
+	}
+
+	/**
+	 * @return the square the piece of a turn ends on
+	 */
+	public static int to(int turn) {
+		return turn & 0xFF;
+	}
+
+	/**
+	 * @return true if the turn is a chain of hops
+	 */
+	public static boolean isHop(int turn) {
+		if (turn == PASS) {
+			return false;
+		}
+		int from = from(turn), to = to(turn);
+		int dx = Math.abs(from % CCBoard.SIZE - to % CCBoard.SIZE);
+		int dy = Math.abs(from / CCBoard.SIZE - to / CCBoard.SIZE);
+		return dx > 1 || dy > 1;
+	}
+}
@@ -16,10 +16,11 @@ public class DontBlockFriendFeature extends Feature {
 		new Point(2, 2)
 	};
 	
-	private static Point[][] FRIEND_PIECE = new Point[4][DEFAULT_FRIEND_PIECE.length];
-	private static Point[][] TRAP_PIECES = new Point[4][DEFAULT_TRAP_PIECES.length];
+	// Also read by LinearEvaluator
+	static final Point[][] FRIEND_PIECE = new Point[4][DEFAULT_FRIEND_PIECE.length];
+	static final Point[][] TRAP_PIECES = new Point[4][DEFAULT_TRAP_PIECES.length];
 	
-	{
+	static {
 		for (int i = 0; i < DEFAULT_FRIEND_PIECE.length; i++) {
 			Point piece = DEFAULT_FRIEND_PIECE[i];
 			FRIEND_PIECE[0][i] = new Point(15 - piece.x, 15 - piece.y);
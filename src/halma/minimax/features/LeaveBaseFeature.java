@@ -1,8 +1,5 @@
 package halma.minimax.features;
 
-import java.awt.Point;
-import java.util.HashSet;
-
 import halma.CCBoard;
 
 public class LeaveBaseFeature extends Feature {
@@ -19,12 +16,7 @@ public class LeaveBaseFeature extends Feature {
 
 	@Override
 	public double getScore(CCBoard board, CCBoard original, int playerID) {
-		int piecesLeft = 0;
-		for (Point p : board.getPieces(playerID)) {
-			if (BASES[playerID].contains(p)) {
-				piecesLeft++;
-			}
-		}
+		int piecesLeft = board.getPiecesInBase(playerID);
 		// Want to maximize the number of pieces out of the base, normalized to the total number of pieces.
 		return (-piecesLeft) / 10.0;
 	}
@@ -0,0 +1,338 @@
+package halma.minimax.features;
+
+import halma.CCBoard;
+import halma.geometry.Geometry;
+
+import java.awt.Point;
+import java.util.List;
+
+/**
+ * A weighted feature list compiled into a single pass over the pieces.
+ *
+ * evaluate() returns exactly the sum of getWeight() * getScore() over the
+ * features, in list order. The scores of the built-in features are computed
+ * together from one scan of the piece squares, using the same arithmetic in
+ * the same order as the features themselves. Terms the board keeps up to
+ * date, such as the distance to the goal, are read without a scan. Other features, including
+ * subclasses of the built-in ones, are called as usual.
+ *
+ * An evaluator may be shared between threads.
+ */
+public class LinearEvaluator {
+
+	private static final int OTHER = 0;
+	private static final int MANHATTAN = 1;
+	private static final int LEAVE_BASE = 2;
+	private static final int DONT_LEAVE_ALONE = 3;
+	private static final int NOT_IN_GOAL_ZONE = 4;
+	private static final int ADJACENT_TO_BASE = 5;
+	private static final int HUDDLE = 6;
+	private static final int AVOID_OPPONENT_BASE = 7;
+	private static final int DONT_BLOCK_FRIEND = 8;
+
+	private static final int PIECES = 13;
+
+	// Piece squares and occupancy, per thread
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private static class Scratch {
+		final int[][] squares = new int[CCBoard.NUMBER_OF_PLAYERS][PIECES];
+		final int[] counts = new int[CCBoard.NUMBER_OF_PLAYERS];
+		final boolean[] occupied = new boolean[Geometry.SQUARES];
+	}
+
+	private final List<Feature> source;
+	private final Feature[] features;
+	private final int[] kinds;
+	private final boolean needsAll;
+	private final boolean needsOwn;
+	private final boolean needsAvoid;
+	private final double maxDistance;
+	private volatile AdjacentCache adjacentCache;
+
+	private LinearEvaluator(List<Feature> source) {
+		this.source = source;
+		this.features = source.toArray(new Feature[source.size()]);
+		this.kinds = new int[features.length];
+		boolean all = false, own = false, avoid = false;
+		double max = 0;
+		for (int i = 0; i < features.length; i++) {
+			kinds[i] = kindOf(features[i]);
+			all |= kinds[i] == DONT_LEAVE_ALONE || kinds[i] == ADJACENT_TO_BASE;
+			own |= kinds[i] == DONT_LEAVE_ALONE || kinds[i] == ADJACENT_TO_BASE || kinds[i] == HUDDLE;
+			if (kinds[i] == AVOID_OPPONENT_BASE) {
+				avoid = true;
+				if (max != 0 && max != ((AvoidOpponentBaseFeature) features[i]).getMaxDistance()) {
+					// Can't share one accumulator, score it separately
+					kinds[i] = OTHER;
+				} else {
+					max = ((AvoidOpponentBaseFeature) features[i]).getMaxDistance();
+				}
+			}
+		}
+		this.needsAll = all;
+		this.needsOwn = own;
+		this.needsAvoid = avoid;
+		this.maxDistance = max;
+	}
+
+	/**
+	 * @param features the weighted features to evaluate
+	 * @return an evaluator for the features
+	 */
+	public static LinearEvaluator compile(List<Feature> features) {
+		return new LinearEvaluator(features);
+	}
+
+	/**
+	 * @return the list this evaluator was compiled from
+	 */
+	public List<Feature> getFeatures() {
+		return source;
+	}
+
+	private static int kindOf(Feature feature) {
+		Class<?> c = feature.getClass();
+		if (c == ManhattanDistanceFeature.class) return MANHATTAN;
+		if (c == LeaveBaseFeature.class) return LEAVE_BASE;
+		if (c == DontLeaveAloneFeature.class) return DONT_LEAVE_ALONE;
+		if (c == NotInGoalZoneFeature.class) return NOT_IN_GOAL_ZONE;
+		if (c == AdjacentToBaseFeature.class) return ADJACENT_TO_BASE;
+		if (c == HuddleFeature.class) return HUDDLE;
+		if (c == AvoidOpponentBaseFeature.class) return AVOID_OPPONENT_BASE;
+		if (c == DontBlockFriendFeature.class) return DONT_BLOCK_FRIEND;
+		return OTHER;
+	}
+
+	/**
+	 * Evaluate a board.
+	 * @param board the board to score
+	 * @param original the board at the root of the search
+	 * @param playerID the player to score for
+	 * @return the weighted sum of the feature scores
+	 */
+	public double evaluate(CCBoard board, CCBoard original, int playerID) {
+		Scratch scratch = SCRATCH.get();
+		int[][] squares = scratch.squares;
+		int[] counts = scratch.counts;
+		boolean[] occupied = scratch.occupied;
+
+		// Only scan for the opponent bases if a piece is near one
+		boolean avoidScan = needsAvoid
+				&& (board.getPiecesNearOpponents(playerID) != 0 || maxDistance > Geometry.OPPONENT_RADIUS);
+		if (needsAll) {
+			for (int p = 0; p < CCBoard.NUMBER_OF_PLAYERS; p++) {
+				counts[p] = board.getPieceSquares(p, squares[p]);
+				for (int i = 0; i < counts[p]; i++) {
+					occupied[squares[p][i]] = true;
+				}
+			}
+		} else if (needsOwn || avoidScan) {
+			counts[playerID] = board.getPieceSquares(playerID, squares[playerID]);
+		}
+
+		// Scores over our own pieces
+		int canHops = 0;
+		int adjacent = 0;
+		double huddle = 0;
+		double avoid = 0;
+		if (needsOwn || avoidScan) {
+			int[] opponents = AvoidOpponentBaseFeature.OPPONENTS[playerID];
+			int[] own = squares[playerID];
+			int count = counts[playerID];
+			for (int i = 0; i < count; i++) {
+				int sq = own[i];
+				if (Geometry.inGoal(sq, playerID)) {
+					canHops++;
+				} else if (needsOwn) {
+					if (needsAll) {
+						canHops += canHop(sq, occupied);
+						adjacent += adjacent(sq, playerID, occupied);
+					}
+
+					double closest = 1000;
+					for (int j = 0; j < count; j++) {
+						if (j == i) continue;
+						double distance = Geometry.distance(sq, own[j]);
+						if (distance < closest) {
+							closest = distance;
+						}
+					}
+					closest = Math.max(0, closest - HuddleFeature.DISTANCE_THRESHOLD);
+					huddle += closest;
+				}
+				for (int o = 0; avoidScan && o < opponents.length; o++) {
+					double distance = Geometry.cornerDistance(sq, opponents[o]);
+					if (distance <= maxDistance) {
+						avoid -= Math.pow((maxDistance - distance), 2);
+					}
+				}
+			}
+		}
+		if (needsAll) {
+			for (int p = 0; p < CCBoard.NUMBER_OF_PLAYERS; p++) {
+				for (int i = 0; i < counts[p]; i++) {
+					occupied[squares[p][i]] = false;
+				}
+			}
+		}
+
+		double result = 0;
+		for (int i = 0; i < features.length; i++) {
+			Feature feature = features[i];
+			double score;
+			switch (kinds[i]) {
+			case MANHATTAN:
+				score = manhattan(board, playerID);
+				break;
+			case LEAVE_BASE:
+				score = (-board.getPiecesInBase(playerID)) / 10.0;
+				break;
+			case DONT_LEAVE_ALONE:
+				score = canHops / 10.0;
+				break;
+			case NOT_IN_GOAL_ZONE:
+				score = (-(board.getPieceCount(playerID) - board.getPiecesInGoal(playerID))) / 10.0;
+				break;
+			case ADJACENT_TO_BASE:
+				score = Math.max(adjacent - adjacentPieces(original, playerID), 0) / 10.0;
+				break;
+			case HUDDLE:
+				score = huddle / (-2 * 13);
+				break;
+			case AVOID_OPPONENT_BASE:
+				score = avoid;
+				break;
+			case DONT_BLOCK_FRIEND:
+				score = blocksFriend(board, playerID) ? -500 : 0;
+				break;
+			default:
+				score = feature.getScore(board, original, playerID);
+			}
+			result += (feature.getWeight(board, original, playerID) * score);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the score of ManhattanDistanceFeature
+	 */
+	private static double manhattan(CCBoard board, int playerID) {
+		int ownDistance = 0;
+		int enemyDistance = 0;
+		for (int p = 0; p < CCBoard.NUMBER_OF_PLAYERS; p++) {
+			int distance = 32 * board.getPieceCount(p) - board.getGoalManhattanSum(p);
+			if (p == playerID || p == (playerID ^ 3)) {
+				ownDistance += distance;
+			} else {
+				enemyDistance += distance;
+			}
+		}
+		return (ownDistance / (13 * 30.0)) - (enemyDistance / (13 * 30.0));
+	}
+
+	/**
+	 * @return 1 if a piece off the goal can hop, see DontLeaveAloneFeature
+	 */
+	private static int canHop(int sq, boolean[] occupied) {
+		for (int d = 0; d < Geometry.DIRECTIONS; d++) {
+			int over = Geometry.step(sq, d);
+			int to = Geometry.hop(sq, d);
+			if (over != Geometry.NONE && occupied[over] && to != Geometry.NONE && !occupied[to]) {
+				return 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the count of a piece off the goal, see AdjacentToBaseFeature
+	 */
+	private static int adjacent(int sq, int playerID, boolean[] occupied) {
+		int[] multiplier = Feature.PLAYER_MULTIPLIERS[playerID];
+		int x = Geometry.x(sq), y = Geometry.y(sq);
+		int count = 1;
+		for (int[] offset : Feature.PROGRESS_OFFSETS) {
+			int bx = x + multiplier[0] * offset[0], by = y + multiplier[1] * offset[1];
+			if (!onBoard(bx, by)) {
+				continue;
+			}
+			int hopBase = CCBoard.squareOf(bx, by);
+			// If we can move directly into the base
+			if (Geometry.inGoal(hopBase, playerID) && !occupied[hopBase]) {
+				return count + 1;
+			}
+			// If the piece can hop into the base
+			if (occupied[hopBase]) {
+				int rx = bx + multiplier[0] * offset[0], ry = by + multiplier[1] * offset[1];
+				if (onBoard(rx, ry)) {
+					int hopResult = CCBoard.squareOf(rx, ry);
+					if (Geometry.inGoal(hopResult, playerID) && !occupied[hopResult]) {
+						return count + 1;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The adjacency count of the root board. It is the same for every board
+	 * of a search, so the last one is kept.
+	 */
+	private int adjacentPieces(CCBoard original, int playerID) {
+		AdjacentCache cache = adjacentCache;
+		if (cache == null || cache.board != original || cache.hash != original.hash() || cache.playerID != playerID) {
+			Scratch scratch = new Scratch();
+			for (int p = 0; p < CCBoard.NUMBER_OF_PLAYERS; p++) {
+				scratch.counts[p] = original.getPieceSquares(p, scratch.squares[p]);
+				for (int i = 0; i < scratch.counts[p]; i++) {
+					scratch.occupied[scratch.squares[p][i]] = true;
+				}
+			}
+			int[] own = scratch.squares[playerID];
+			int value = 0;
+			for (int i = 0; i < scratch.counts[playerID]; i++) {
+				if (!Geometry.inGoal(own[i], playerID)) {
+					value += adjacent(own[i], playerID, scratch.occupied);
+				}
+			}
+			cache = new AdjacentCache(original, original.hash(), playerID, value);
+			adjacentCache = cache;
+		}
+		return cache.value;
+	}
+
+	private static class AdjacentCache {
+		final CCBoard board;
+		final long hash;
+		final int playerID;
+		final int value;
+
+		AdjacentCache(CCBoard board, long hash, int playerID, int value) {
+			this.board = board;
+			this.hash = hash;
+			this.playerID = playerID;
+			this.value = value;
+		}
+	}
+
+	private static boolean blocksFriend(CCBoard board, int playerID) {
+		for (Point p : DontBlockFriendFeature.FRIEND_PIECE[playerID]) {
+			if (board.getPieceAt(CCBoard.squareOf(p.x, p.y)) != (playerID ^ 3)) return false;
+		}
+		for (Point p : DontBlockFriendFeature.TRAP_PIECES[playerID]) {
+			if (board.getPieceAt(CCBoard.squareOf(p.x, p.y)) != playerID) return false;
+		}
+		return true;
+	}
+
+	private static boolean onBoard(int x, int y) {
+		return x >= 0 && y >= 0 && x < CCBoard.SIZE && y < CCBoard.SIZE;
+	}
+}
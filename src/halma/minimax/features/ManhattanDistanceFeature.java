@@ -10,13 +10,6 @@ import halma.CCBoard;
  */
 public class ManhattanDistanceFeature extends Feature {
 
-	private final static Point[] GOAL_POINTS = {
-    	new Point(CCBoard.SIZE - 1, CCBoard.SIZE - 1),
-    	new Point(0, CCBoard.SIZE - 1),
-    	new Point(CCBoard.SIZE - 1, 0),
-    	new Point(0, 0)
-    };
-	
 	private double weight;
 
 	public ManhattanDistanceFeature(double weight) {
@@ -39,13 +32,12 @@ public class ManhattanDistanceFeature extends Feature {
 		int enemyDistance = 0;
 
 		for (int i = 0; i < 4; i++) {
-			for (Point p : board.getPieces(i)) {
-				int distance = 32 - manhattanDistance(p, GOAL_POINTS[i]);
-				if (i == playerID || i == (playerID ^ 3)) {
-					ownDistance += distance;
-				} else {
-					enemyDistance += distance;
-				}
+			// The board keeps the sum of Geometry.goalManhattan() over the pieces
+			int distance = 32 * board.getPieceCount(i) - board.getGoalManhattanSum(i);
+			if (i == playerID || i == (playerID ^ 3)) {
+				ownDistance += distance;
+			} else {
+				enemyDistance += distance;
 			}
 		}
 		
@@ -0,0 +1,273 @@
+package halma.record;
+
+import halma.CCBoard;
+import halma.CCMove;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import boardgame.GameLog;
+
+/**
+ * One game in the binary record format, the compact form of a server log.
+ *
+ * A record is, in big-endian order:
+ * <pre>
+ *   int    MAGIC
+ *   int    the length of the rest of the record in bytes
+ *   UTF    the board class
+ *   int    the game ID
+ *   int    the timeout
+ *   byte   the number of players, then the UTF name of each
+ *   int    the number of moves, then 2 bytes for each move
+ *   UTF    the outcome, e.g. "WINNER Player-1", or empty if the log was cut
+ *          short
+ *   UTF    the reason the game ended, as in the GAMEOVER line
+ * </pre>
+ * A move is the square index of its origin and the one of its destination,
+ * see CCBoard.squareOf(). Ending the turn is END_TURN in both bytes, as no
+ * move goes from a square to itself. The player of each move is not stored,
+ * it is the player to move when the game is replayed.
+ *
+ * Records are written one after the other in a file, see RecordFile.
+ */
+public class GameRecord {
+
+	public static final int MAGIC = 0x48475231; // "HGR1"
+	public static final int END_TURN = 0xFF;
+
+	private final String boardClass;
+	private final int gameID;
+	private final int timeout;
+	private final String[] players;
+	private final ByteBuffer moves;
+	private final String outcome;
+	private final String reason;
+
+	GameRecord(String boardClass, int gameID, int timeout, String[] players,
+			ByteBuffer moves, String outcome, String reason) {
+		this.boardClass = boardClass;
+		this.gameID = gameID;
+		this.timeout = timeout;
+		this.players = players;
+		this.moves = moves;
+		this.outcome = outcome;
+		this.reason = reason;
+	}
+
+	public String getBoardClass() { return boardClass; }
+
+	public int getGameID() { return gameID; }
+
+	public int getTimeout() { return timeout; }
+
+	public String[] getPlayers() { return players.clone(); }
+
+	public String getOutcome() { return outcome; }
+
+	public String getReason() { return reason; }
+
+	/**
+	 * @return the number of moves, including the ends of turns
+	 */
+	public int getMoveCount() {
+		return moves.remaining() / 2;
+	}
+
+	/**
+	 * @return the origin square of a move, or END_TURN
+	 */
+	public int getFrom(int move) {
+		return moves.get(moves.position() + 2 * move) & 0xFF;
+	}
+
+	/**
+	 * @return the destination square of a move, or END_TURN
+	 */
+	public int getTo(int move) {
+		return moves.get(moves.position() + 2 * move + 1) & 0xFF;
+	}
+
+	public boolean isEndTurn(int move) {
+		return getFrom(move) == END_TURN && getTo(move) == END_TURN;
+	}
+
+	/**
+	 * Get a move as the player to move on the board would play it.
+	 * @param move the index of the move
+	 * @param player the player to move
+	 */
+	public CCMove getMove(int move, int player) {
+		if (isEndTurn(move)) {
+			return new CCMove(player, null, null);
+		}
+		return new CCMove(player, CCBoard.pointOf(getFrom(move)), CCBoard.pointOf(getTo(move)));
+	}
+
+	/**
+	 * Replay the game from the initial position.
+	 * @param count the number of moves to play, at most getMoveCount()
+	 * @return the board after them
+	 * @throws IllegalArgumentException if a move is illegal
+	 */
+	public CCBoard replay(int count) {
+		CCBoard board = new CCBoard();
+		for (int i = 0; i < count; i++) {
+			board.move(getMove(i, board.getTurn()));
+		}
+		return board;
+	}
+
+	/**
+	 * @return the two bytes of a move
+	 */
+	public static int encode(CCMove m) {
+		if (m.getFrom() == null || m.getTo() == null) {
+			return END_TURN << 8 | END_TURN;
+		}
+		return CCBoard.squareOf(m.getFrom().x, m.getFrom().y) << 8
+				| CCBoard.squareOf(m.getTo().x, m.getTo().y);
+	}
+
+	/**
+	 * Convert a server log. The moves are replayed on a board, to check
+	 * them and that each one is by the player to move.
+	 * @param file the log
+	 * @return the record
+	 * @throws IllegalArgumentException if the log is not a halma game
+	 */
+	public static GameRecord fromLog(String file) throws IOException {
+		List<String> lines = GameLog.readLines(file);
+		String boardClass = null;
+		int gameID = -1, timeout = 0;
+		String[] players = new String[CCBoard.NUMBER_OF_PLAYERS];
+		int started = 0;
+		ByteBuffer moves = ByteBuffer.allocate(2 * lines.size());
+		String outcome = "", reason = "";
+		CCBoard board = new CCBoard();
+		for (String line : lines) {
+			if (line.startsWith("# Game ID:")) {
+				gameID = Integer.parseInt(line.substring(10).trim());
+			} else if (line.startsWith("# Board class:")) {
+				boardClass = line.substring(14).trim();
+			} else if (line.startsWith("# Timeout:")) {
+				timeout = Integer.parseInt(line.substring(10).trim());
+			} else if (line.startsWith("#")) {
+				// Other comments
+			} else if (line.startsWith("START")) {
+				String name = line.substring(line.indexOf(' ') + 1).trim();
+				players[started++] = name.substring(name.indexOf(' ') + 1).trim();
+			} else if (line.startsWith("GAMEOVER")) {
+				reason = line.substring(8).trim();
+			} else if (line.startsWith("WINNER") || line.startsWith("DRAW") || line.startsWith("UNDECIDED")) {
+				outcome = line;
+				break;
+			} else {
+				CCMove m = (CCMove) board.parseMove(line);
+				if (m.getPlayerID() != board.getTurn()) {
+					throw new IllegalArgumentException(file + ": move out of turn: " + line);
+				}
+				board.move(m);
+				moves.putShort((short) encode(m));
+			}
+		}
+		if (!CCBoard.class.getName().equals(boardClass)) {
+			throw new IllegalArgumentException(file + ": not a " + CCBoard.class.getName() + " log");
+		}
+		if (started < players.length) {
+			throw new IllegalArgumentException(file + ": missing START lines");
+		}
+		moves.flip();
+		return new GameRecord(boardClass, gameID, timeout, players, moves, outcome, reason);
+	}
+
+	/**
+	 * Write the record.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		// The body first, to know its length
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + moves.remaining());
+		DataOutputStream body = new DataOutputStream(bytes);
+		body.writeUTF(boardClass);
+		body.writeInt(gameID);
+		body.writeInt(timeout);
+		body.writeByte(players.length);
+		for (String p : players) {
+			body.writeUTF(p);
+		}
+		body.writeInt(getMoveCount());
+		body.write(moves.array(), moves.arrayOffset() + moves.position(), moves.remaining());
+		body.writeUTF(outcome);
+		body.writeUTF(reason);
+		body.flush();
+
+		out.writeInt(MAGIC);
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	/**
+	 * Read a record. The moves are not copied, the record refers to the
+	 * buffer.
+	 * @param buf the buffer, at the start of the record, and after it on
+	 * return
+	 * @throws IllegalArgumentException if it is not a record
+	 */
+	public static GameRecord read(ByteBuffer buf) {
+		if (buf.getInt() != MAGIC) {
+			throw new IllegalArgumentException("Not a game record at " + (buf.position() - 4));
+		}
+		int length = buf.getInt();
+		int end = buf.position() + length;
+		String boardClass = readUTF(buf);
+		int gameID = buf.getInt();
+		int timeout = buf.getInt();
+		String[] players = new String[buf.get() & 0xFF];
+		for (int i = 0; i < players.length; i++) {
+			players[i] = readUTF(buf);
+		}
+		int count = buf.getInt();
+		ByteBuffer moves = buf.slice();
+		moves.limit(2 * count);
+		buf.position(buf.position() + 2 * count);
+		String outcome = readUTF(buf);
+		String reason = readUTF(buf);
+		buf.position(end);
+		return new GameRecord(boardClass, gameID, timeout, players, moves, outcome, reason);
+	}
+
+	/**
+	 * Skip a record without decoding it.
+	 * @param buf the buffer, at the start of the record, and after it on
+	 * return
+	 */
+	public static void skip(ByteBuffer buf) {
+		if (buf.getInt() != MAGIC) {
+			throw new IllegalArgumentException("Not a game record at " + (buf.position() - 4));
+		}
+		int length = buf.getInt();
+		buf.position(buf.position() + length);
+	}
+
+	// The strings are short and plain, but writeUTF() is modified UTF-8
+	private static String readUTF(ByteBuffer buf) {
+		int length = buf.getShort() & 0xFFFF;
+		char[] chars = new char[length];
+		int n = 0;
+		int end = buf.position() + length;
+		while (buf.position() < end) {
+			int c = buf.get() & 0xFF;
+			if (c < 0x80) {
+				chars[n++] = (char) c;
+			} else if ((c & 0xE0) == 0xC0) {
+				chars[n++] = (char) (((c & 0x1F) << 6) | (buf.get() & 0x3F));
+			} else {
+				chars[n++] = (char) (((c & 0x0F) << 12) | ((buf.get() & 0x3F) << 6) | (buf.get() & 0x3F));
+			}
+		}
+		return new String(chars, 0, n);
+	}
+}
@@ -0,0 +1,114 @@
+package halma.record;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A file of game records, read through a memory mapping, so going over a
+ * large collection of games costs little more than reading the file.
+ *
+ * The file is mapped WINDOW bytes at a time, and a window always starts at
+ * a record, so files of any size can be read. The records returned refer to
+ * the mapping and do not copy their moves.
+ *
+ * Usage:
+ * <pre>
+ *   RecordFile in = RecordFile.open(file);
+ *   try {
+ *       for (GameRecord r : in) { ... }
+ *   } finally {
+ *       in.close();
+ *   }
+ * </pre>
+ */
+public class RecordFile implements Iterable<GameRecord>, Closeable {
+
+	public static final long WINDOW = 1L << 30;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+
+	private RecordFile(RandomAccessFile file) throws IOException {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.size = channel.size();
+	}
+
+	/**
+	 * Open a file of records for reading.
+	 */
+	public static RecordFile open(File f) throws IOException {
+		return new RecordFile(new RandomAccessFile(f, "r"));
+	}
+
+	/**
+	 * Open a file for writing records, replacing it or appending to it.
+	 */
+	public static DataOutputStream create(File f, boolean append) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f, append), 1 << 16));
+	}
+
+	/**
+	 * @return the size of the file in bytes
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return the records, in the order of the file. Each call starts over
+	 * from the start of the file.
+	 */
+	public Iterator<GameRecord> iterator() {
+		return new Iterator<GameRecord>() {
+			private MappedByteBuffer window;
+			private long start = 0; // The offset of the window in the file
+
+			public boolean hasNext() {
+				return start + (window == null ? 0 : window.position()) < size;
+			}
+
+			public GameRecord next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				try {
+					ensure(8);
+					int length = window.getInt(window.position() + 4);
+					ensure(8 + length);
+				} catch (IOException e) {
+					throw new IllegalStateException("Failed to map " + file + ": " + e);
+				}
+				return GameRecord.read(window);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			// Map the next bytes of the file, from the current record on
+			private void ensure(int bytes) throws IOException {
+				if (window != null && window.remaining() >= bytes) return;
+				long at = start + (window == null ? 0 : window.position());
+				if (at + bytes > size) {
+					throw new IllegalStateException("Record cut short at " + at);
+				}
+				long length = Math.max(bytes, Math.min(WINDOW, size - at));
+				window = channel.map(FileChannel.MapMode.READ_ONLY, at, length);
+				start = at;
+			}
+		};
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+}
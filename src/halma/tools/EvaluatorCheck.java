@@ -0,0 +1,171 @@
+package halma.tools;
+
+import halma.CCBoard;
+import halma.CCMove;
+import halma.geometry.Geometry;
+import halma.minimax.features.AdjacentToBaseFeature;
+import halma.minimax.features.AvoidOpponentBaseFeature;
+import halma.minimax.features.DontBlockFriendFeature;
+import halma.minimax.features.DontLeaveAloneFeature;
+import halma.minimax.features.Feature;
+import halma.minimax.features.HuddleFeature;
+import halma.minimax.features.LeaveBaseFeature;
+import halma.minimax.features.LinearEvaluator;
+import halma.minimax.features.ManhattanDistanceFeature;
+import halma.minimax.features.NotInGoalZoneFeature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that LinearEvaluator gives exactly the same value as summing
+ * getWeight() * getScore() over the features.
+ *
+ * Plays random games, biased towards the goal so that endgames are reached
+ * too, and compares both on every position reached, for every
+ * player, with the root board a few plies back as the original board. The
+ * feature lists are those of the players, plus one with a feature the
+ * evaluator does not know. The terms the board keeps for the features are
+ * checked against a count over the pieces as well, also after a move has
+ * been made and undone. Exits with status 1 on the first mismatch.
+ *
+ * Usage: EvaluatorCheck [games] [seed]
+ */
+public class EvaluatorCheck {
+
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+		List<List<Feature>> lists = Arrays.asList(
+			// CCMiniMaxPlayer
+			Arrays.asList((Feature) new ManhattanDistanceFeature(0.9),
+				new LeaveBaseFeature(0.002),
+				new DontLeaveAloneFeature(0.005),
+				new NotInGoalZoneFeature(0.015),
+				new AdjacentToBaseFeature(0.05),
+				new HuddleFeature(0.25),
+				new AvoidOpponentBaseFeature(0.25),
+				new DontBlockFriendFeature()),
+			// CCMCTSPlayer
+			Arrays.asList((Feature) new ManhattanDistanceFeature(0.9),
+				new LeaveBaseFeature(0.002),
+				new DontLeaveAloneFeature(0.005),
+				new NotInGoalZoneFeature(0.015),
+				new AdjacentToBaseFeature(0.05),
+				new HuddleFeature(0.40),
+				new AvoidOpponentBaseFeature(0.25),
+				new DontBlockFriendFeature()),
+			// CCSimulatedAnnealingPlayer
+			Arrays.asList((Feature) new ManhattanDistanceFeature(0.8),
+				new LeaveBaseFeature(0.002),
+				new DontLeaveAloneFeature(0.01),
+				new NotInGoalZoneFeature(0.02),
+				new AdjacentToBaseFeature(0.05)),
+			// Features the evaluator has to call as usual
+			Arrays.asList((Feature) new HuddleFeature(0.25),
+				new ManhattanDistanceFeature(0.9) {
+				},
+				new Feature() {
+					@Override
+					public double getWeight(CCBoard board, CCBoard original, int playerID) {
+						return 0.3;
+					}
+
+					@Override
+					public double getScore(CCBoard board, CCBoard original, int playerID) {
+						return board.getPieces(playerID).get(0).x / 7.0;
+					}
+				})
+		);
+		List<LinearEvaluator> evaluators = new ArrayList<LinearEvaluator>();
+		for (List<Feature> features : lists) {
+			evaluators.add(LinearEvaluator.compile(features));
+		}
+
+		Random random = new Random(seed);
+		long positions = 0;
+		for (int game = 0; game < games; game++) {
+			CCBoard board = new CCBoard();
+			CCBoard original = (CCBoard) board.clone();
+			while (board.getWinner() == CCBoard.NOBODY) {
+				board.move(pickMove(board, random));
+				if (random.nextInt(8) == 0) {
+					original = (CCBoard) board.clone();
+				}
+				checkTerms(board, game);
+				CCMove move = board.getLegalMoves().get(0);
+				board.makeMove(move);
+				checkTerms(board, game);
+				board.unmakeMove();
+				checkTerms(board, game);
+				for (int l = 0; l < lists.size(); l++) {
+					for (int player = 0; player < CCBoard.NUMBER_OF_PLAYERS; player++) {
+						double expected = 0;
+						for (Feature feature : lists.get(l)) {
+							expected += (feature.getWeight(board, original, player) * feature.getScore(board, original, player));
+						}
+						double actual = evaluators.get(l).evaluate(board, original, player);
+						if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+							System.out.println("Mismatch in game " + game + " for list " + l + " and player " + player
+									+ ": expected " + expected + ", got " + actual);
+							System.exit(1);
+						}
+					}
+				}
+				positions++;
+			}
+		}
+		System.out.println("OK: " + positions + " positions, " + lists.size() + " feature lists");
+	}
+
+	/**
+	 * Compare the terms kept by the board with a count over its pieces.
+	 */
+	private static void checkTerms(CCBoard board, int game) {
+		int[] squares = new int[13];
+		for (int player = 0; player < CCBoard.NUMBER_OF_PLAYERS; player++) {
+			int count = board.getPieceSquares(player, squares);
+			int manhattan = 0, inBase = 0, inGoal = 0, near = 0;
+			for (int i = 0; i < count; i++) {
+				manhattan += Geometry.goalManhattan(squares[i], player);
+				inBase += Geometry.inBase(squares[i], player) ? 1 : 0;
+				inGoal += Geometry.inGoal(squares[i], player) ? 1 : 0;
+				near += Geometry.nearOpponents(squares[i], player) ? 1 : 0;
+			}
+			if (count != board.getPieceCount(player) || manhattan != board.getGoalManhattanSum(player)
+					|| inBase != board.getPiecesInBase(player) || inGoal != board.getPiecesInGoal(player)
+					|| near != board.getPiecesNearOpponents(player)) {
+				System.out.println("Board terms out of date in game " + game + " for player " + player);
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Half the time a random move, otherwise the one getting closest to the
+	 * goal.
+	 */
+	private static CCMove pickMove(CCBoard board, Random random) {
+		ArrayList<CCMove> moves = board.getLegalMoves();
+		if (random.nextBoolean()) {
+			return moves.get(random.nextInt(moves.size()));
+		}
+		CCMove best = moves.get(0);
+		int bestGain = Integer.MIN_VALUE;
+		for (CCMove move : moves) {
+			if (move.getFrom() == null) {
+				continue;
+			}
+			int gain = Geometry.goalManhattan(CCBoard.squareOf(move.getFrom().x, move.getFrom().y), move.getPlayerID())
+					- Geometry.goalManhattan(CCBoard.squareOf(move.getTo().x, move.getTo().y), move.getPlayerID());
+			if (gain > bestGain) {
+				bestGain = gain;
+				best = move;
+			}
+		}
+		return best;
+	}
+}
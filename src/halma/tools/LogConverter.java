@@ -0,0 +1,167 @@
+package halma.tools;
+
+import halma.CCBoard;
+import halma.CCMove;
+import halma.record.GameRecord;
+import halma.record.RecordFile;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import boardgame.GameLog;
+import boardgame.Server;
+
+/**
+ * Converts server logs to a file of binary game records, and checks the
+ * records against the logs.
+ *
+ * Usage: LogConverter [-a] out.hgr (log file | log directory)...
+ *        LogConverter -check in.hgr (log file | log directory)...
+ *
+ * The first form writes a record for each halma log, in the order of the
+ * game IDs, and skips the logs that cannot be converted. With -a the records
+ * are appended to the file.
+ *
+ * The second form replays every game of the record file, and the same games
+ * from the logs, and compares the final positions. It prints the time both
+ * took, and exits with status 1 if a game differs or is missing.
+ */
+public class LogConverter {
+
+	public static void main(String[] args) throws IOException {
+		boolean append = false, check = false;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i++) {
+			if (args[i].equals("-a")) append = true;
+			else if (args[i].equals("-check")) check = true;
+			else usage();
+		}
+		if (args.length - i < 2) usage();
+		File records = new File(args[i++]);
+		List<File> logs = new ArrayList<File>();
+		for (; i < args.length; i++) {
+			addLogs(new File(args[i]), logs);
+		}
+		if (check) {
+			System.exit(check(records, logs) ? 0 : 1);
+		}
+		convert(records, logs, append);
+	}
+
+	private static void usage() {
+		System.err.println("Usage: LogConverter [-a] out.hgr (log file | log directory)...\n"
+				+ "       LogConverter -check in.hgr (log file | log directory)...");
+		System.exit(2);
+	}
+
+	private static void addLogs(File f, List<File> logs) {
+		if (f.isDirectory()) {
+			File[] files = f.listFiles();
+			Arrays.sort(files);
+			for (File g : files) {
+				String name = g.getName();
+				if (name.startsWith(Server.LOG_PREFIX) && name.endsWith(Server.LOG_SUFFIX)) {
+					logs.add(g);
+				}
+			}
+		} else {
+			logs.add(f);
+		}
+	}
+
+	private static void convert(File records, List<File> logs, boolean append) throws IOException {
+		long start = System.nanoTime();
+		long moves = 0, in = 0;
+		int games = 0, skipped = 0;
+		DataOutputStream out = RecordFile.create(records, append);
+		try {
+			for (File log : logs) {
+				GameRecord r;
+				try {
+					r = GameRecord.fromLog(log.getPath());
+				} catch (IllegalArgumentException e) {
+					System.err.println("Skipping " + log + ": " + e.getMessage());
+					skipped++;
+					continue;
+				}
+				r.write(out);
+				games++;
+				moves += r.getMoveCount();
+				in += log.length();
+			}
+		} finally {
+			out.close();
+		}
+		double s = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d games, %d moves, %d bytes of logs to %d bytes in %.2f s, %d skipped%n",
+				games, moves, in, records.length(), s, skipped);
+	}
+
+	private static boolean check(File records, List<File> logs) throws IOException {
+		// The binary replay
+		Map<Integer, Long> hashes = new HashMap<Integer, Long>();
+		Map<Integer, Integer> turns = new HashMap<Integer, Integer>();
+		long moves = 0;
+		long start = System.nanoTime();
+		RecordFile in = RecordFile.open(records);
+		try {
+			for (GameRecord r : in) {
+				CCBoard board = r.replay(r.getMoveCount());
+				hashes.put(r.getGameID(), board.hash());
+				turns.put(r.getGameID(), board.getTurnsPlayed());
+				moves += r.getMoveCount();
+			}
+		} finally {
+			in.close();
+		}
+		double binary = (System.nanoTime() - start) / 1e9;
+
+		// The text replay
+		boolean ok = true;
+		long textMoves = 0;
+		start = System.nanoTime();
+		for (File log : logs) {
+			int gameID = -1;
+			String boardClass = null;
+			CCBoard board = new CCBoard();
+			for (String line : GameLog.readLines(log.getPath())) {
+				if (line.startsWith("# Game ID:")) {
+					gameID = Integer.parseInt(line.substring(10).trim());
+				} else if (line.startsWith("# Board class:")) {
+					boardClass = line.substring(14).trim();
+				} else if (line.startsWith("#") || line.startsWith("START") || line.startsWith("GAMEOVER")) {
+					// Not a move
+				} else if (line.startsWith("WINNER") || line.startsWith("DRAW") || line.startsWith("UNDECIDED")) {
+					break;
+				} else {
+					board.move((CCMove) board.parseMove(line));
+					textMoves++;
+				}
+			}
+			if (!CCBoard.class.getName().equals(boardClass)) continue;
+			Long hash = hashes.remove(gameID);
+			if (hash == null) {
+				System.out.println("Game " + gameID + " (" + log + ") is missing");
+				ok = false;
+			} else if (hash != board.hash() || turns.get(gameID) != board.getTurnsPlayed()) {
+				System.out.println("Game " + gameID + " (" + log + ") differs");
+				ok = false;
+			}
+		}
+		double text = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("records: %.3f s, %.0f moves/s (%d bytes)%n", binary, moves / binary, records.length());
+		System.out.printf("logs:    %.3f s, %.0f moves/s%n", text, textMoves / text);
+		if (!hashes.isEmpty()) {
+			System.out.println(hashes.size() + " games of the records have no log");
+		}
+		System.out.println(ok ? "OK" : "FAILED");
+		return ok;
+	}
+}
@@ -0,0 +1,60 @@
+package halma.tools;
+
+import halma.CCBoard;
+import halma.CCMCTSPlayer;
+import halma.CCMCTSPlayer.Parallelism;
+
+/**
+ * Measures how the Monte Carlo tree search scales with the number of threads.
+ *
+ * Searches a set of reproducible midgame positions with both kinds of
+ * parallelism and 1 to N threads, and prints playouts per second for each
+ * along with how far the searches ran over their time budget.
+ *
+ * Usage: MCTSScaling [maxThreads] [budget ms] [positions]
+ */
+public class MCTSScaling {
+
+	public static void main(String[] args) {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		long budget = args.length > 1 ? Long.parseLong(args[1]) : 800;
+		int positions = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+		CCBoard[] boards = new CCBoard[positions];
+		for (int i = 0; i < positions; i++) {
+			boards[i] = SearchScaling.randomPosition(i, 40 + i * 20);
+		}
+
+		System.out.println("mode  threads  playouts  playouts/s  speedup  max overrun ms");
+		for (Parallelism parallelism : Parallelism.values()) {
+			double referenceRate = 0;
+			for (int threads = 1; threads <= maxThreads; threads++) {
+				CCMCTSPlayer player = new CCMCTSPlayer();
+				player.setColor(0);
+				player.setThreads(threads, parallelism);
+
+				long playouts = 0;
+				long time = 0;
+				long overrun = 0;
+				for (int i = 0; i < positions; i++) {
+					// Always start from a new tree
+					player.gameStarted("");
+					long start = System.currentTimeMillis();
+					player.search((CCBoard) boards[i].clone(), start + budget);
+					long elapsed = System.currentTimeMillis() - start;
+					time += elapsed;
+					overrun = Math.max(overrun, elapsed - budget);
+					playouts += player.getPlayouts();
+				}
+				player.gameOver("");
+
+				double rate = playouts * 1000.0 / Math.max(1, time);
+				if (threads == 1) {
+					referenceRate = rate;
+				}
+				System.out.println(String.format("%-5s %7d %9d %11.0f %7.2fx %15d",
+						parallelism, threads, playouts, rate, rate / referenceRate, overrun));
+			}
+		}
+	}
+}
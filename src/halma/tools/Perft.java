@@ -0,0 +1,269 @@
+package halma.tools;
+
+import halma.CCBoard;
+import halma.CCMove;
+import halma.minimax.TurnGenerator;
+
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the positions reachable in a number of full turns, to check a move
+ * generator against the rules and to measure its speed.
+ *
+ * A turn is a step, a whole chain of hops with one piece, or ending the turn
+ * without moving once the player has won. Hop chains reaching the same
+ * square from the same piece are one turn. The reference count finds the
+ * turns with CCBoard.getLegalMoves(), one move at a time, and the fast count
+ * uses TurnGenerator. Both play every turn on the board with makeMove(), so
+ * the board is checked as well. A position where the game is over has no
+ * turns.
+ *
+ * Usage: Perft [depth] [-divide] [log file [moves]]
+ *
+ * Without a log file the counts start from the initial position. Otherwise
+ * the moves of a server log are replayed, up to the given number of moves,
+ * and the counts start from the last turn started. With -divide the counts
+ * of each first turn are printed too. Exits with status 1 if the two counts
+ * differ.
+ */
+public class Perft {
+
+	private long nodes;
+	private final TurnGenerator[] generators;
+	private final int[] path = new int[CCBoard.SIZE * CCBoard.SIZE / 4 + 1];
+
+	private Perft(int depth) {
+		generators = new TurnGenerator[depth + 1];
+		for (int i = 0; i <= depth; i++) {
+			generators[i] = new TurnGenerator();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int depth = 3;
+		boolean divide = false;
+		String log = null;
+		int moves = Integer.MAX_VALUE;
+		int positional = 0;
+		for (String arg : args) {
+			if (arg.equals("-divide")) {
+				divide = true;
+			} else if (positional == 0) {
+				depth = Integer.parseInt(arg);
+				positional++;
+			} else if (positional == 1) {
+				log = arg;
+				positional++;
+			} else {
+				moves = Integer.parseInt(arg);
+			}
+		}
+
+		CCBoard board = log == null ? new CCBoard() : loadLog(log, moves);
+		System.out.println(board);
+		System.out.println("Player " + board.getTurn() + " to move, turn " + board.getTurnsPlayed());
+		System.out.println("depth  generator        turns          ms      nodes/s");
+		boolean match = true;
+		for (int d = 1; d <= depth; d++) {
+			Perft reference = new Perft(d);
+			long start = System.nanoTime();
+			long expected = reference.reference(board, d);
+			print(d, "getLegalMoves", expected, reference.nodes, System.nanoTime() - start);
+
+			Perft fast = new Perft(d);
+			start = System.nanoTime();
+			long actual = fast.fast(board, d);
+			print(d, "TurnGenerator", actual, fast.nodes, System.nanoTime() - start);
+
+			if (expected != actual) {
+				System.out.println("MISMATCH at depth " + d);
+				match = false;
+			}
+		}
+		if (divide) {
+			divide(board, depth);
+		}
+		if (!match) {
+			System.exit(1);
+		}
+	}
+
+	private static void print(int depth, String generator, long count, long nodes, long nanos) {
+		System.out.println(String.format("%5d  %-13s %12d %11d %12.0f",
+				depth, generator, count, nanos / 1000000, nodes * 1e9 / Math.max(1, nanos)));
+	}
+
+	/**
+	 * Print the counts below each first turn with both generators.
+	 */
+	private static void divide(CCBoard board, int depth) {
+		System.out.println("Divide at depth " + depth + ":");
+		Map<Integer, List<CCMove>> turns = referenceTurns(board);
+		for (Map.Entry<Integer, List<CCMove>> e : turns.entrySet()) {
+			for (CCMove m : e.getValue()) {
+				board.makeMove(m);
+			}
+			long expected = new Perft(depth).reference(board, depth - 1);
+			long actual = new Perft(depth).fast(board, depth - 1);
+			for (int i = 0; i < e.getValue().size(); i++) {
+				board.unmakeMove();
+			}
+			System.out.println(String.format("%-12s %12d %12d%s", turnName(e.getKey()),
+					expected, actual, expected == actual ? "" : "  MISMATCH"));
+		}
+	}
+
+	private static String turnName(int turn) {
+		if (turn == TurnGenerator.PASS) {
+			return "pass";
+		}
+		Point from = CCBoard.pointOf(TurnGenerator.from(turn));
+		Point to = CCBoard.pointOf(TurnGenerator.to(turn));
+		return from.x + "," + from.y + ">" + to.x + "," + to.y;
+	}
+
+	/**
+	 * Count with the turns found by getLegalMoves().
+	 */
+	private long reference(CCBoard board, int depth) {
+		nodes++;
+		if (depth == 0) {
+			return 1;
+		}
+		if (board.getWinner() != CCBoard.NOBODY) {
+			return 0;
+		}
+		long count = 0;
+		for (List<CCMove> turn : referenceTurns(board).values()) {
+			for (CCMove m : turn) {
+				board.makeMove(m);
+			}
+			count += reference(board, depth - 1);
+			for (int i = 0; i < turn.size(); i++) {
+				board.unmakeMove();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Find the turns of the player to move by following the legal moves.
+	 * @return the moves of each distinct turn, by TurnGenerator.pack() or PASS
+	 */
+	static Map<Integer, List<CCMove>> referenceTurns(CCBoard board) {
+		Map<Integer, List<CCMove>> turns = new LinkedHashMap<Integer, List<CCMove>>();
+		collect(board, -1, new ArrayList<CCMove>(), turns);
+		return turns;
+	}
+
+	private static void collect(CCBoard board, int origin, List<CCMove> moves, Map<Integer, List<CCMove>> turns) {
+		for (CCMove m : board.getLegalMoves()) {
+			if (m.getFrom() == null) {
+				// Ending the turn after a hop is covered by the hop itself
+				if (board.getLastMoved() == null) {
+					List<CCMove> turn = new ArrayList<CCMove>();
+					turn.add(m);
+					turns.put(TurnGenerator.PASS, turn);
+				}
+				continue;
+			}
+			int from = origin >= 0 ? origin : CCBoard.squareOf(m.getFrom().x, m.getFrom().y);
+			int key = TurnGenerator.pack(from, CCBoard.squareOf(m.getTo().x, m.getTo().y));
+			moves.add(m);
+			if (!turns.containsKey(key)) {
+				List<CCMove> turn = new ArrayList<CCMove>(moves);
+				if (m.isHop()) {
+					turn.add(new CCMove(m.getPlayerID(), null, null));
+				}
+				turns.put(key, turn);
+			}
+			if (m.isHop()) {
+				board.makeMove(m);
+				collect(board, from, moves, turns);
+				board.unmakeMove();
+			}
+			moves.remove(moves.size() - 1);
+		}
+	}
+
+	/**
+	 * Count with the turns of TurnGenerator.
+	 */
+	private long fast(CCBoard board, int depth) {
+		nodes++;
+		if (depth == 0) {
+			return 1;
+		}
+		if (board.getWinner() != CCBoard.NOBODY) {
+			return 0;
+		}
+		TurnGenerator generator = generators[depth];
+		int turnCount = generator.generate(board);
+		int[] turns = generator.getTurns();
+		int[] links = generator.getLinks();
+		int player = board.getTurn();
+		long count = 0;
+		for (int i = 0; i < turnCount; i++) {
+			int made = 0;
+			if (turns[i] == TurnGenerator.PASS) {
+				board.makeMove(new CCMove(player, null, null));
+				made++;
+			} else {
+				int length = TurnGenerator.getPath(turns, links, i, path);
+				for (int j = 1; j < length; j++) {
+					board.makeMove(new CCMove(player, CCBoard.pointOf(path[j - 1]), CCBoard.pointOf(path[j])));
+					made++;
+				}
+				if (TurnGenerator.isHop(turns[i])) {
+					board.makeMove(new CCMove(player, null, null));
+					made++;
+				}
+			}
+			count += fast(board, depth - 1);
+			for (int j = 0; j < made; j++) {
+				board.unmakeMove();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Replay the moves of a server log.
+	 * @param file the log file
+	 * @param moves the number of moves to replay at most
+	 * @return the board at the start of the last turn reached
+	 */
+	static CCBoard loadLog(String file, int moves) throws IOException {
+		CCBoard board = new CCBoard();
+		CCBoard turnStart = (CCBoard) board.clone();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int played = 0;
+			while (played < moves && (line = in.readLine()) != null) {
+				if (line.startsWith("#") || line.startsWith("START") || line.trim().isEmpty()) {
+					continue;
+				}
+				if (line.startsWith("GAMEOVER") || line.startsWith("WINNER")
+						|| line.startsWith("DRAW") || line.startsWith("UNDECIDED")) {
+					break;
+				}
+				board.move(board.parseMove(line));
+				played++;
+				if (board.getLastMoved() == null) {
+					turnStart = (CCBoard) board.clone();
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return turnStart;
+	}
+}
@@ -0,0 +1,81 @@
+package halma.tools;
+
+import halma.CCBoard;
+import halma.CCMiniMaxPlayer;
+import halma.CCMove;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures how the minimax search scales with the number of threads.
+ *
+ * Searches a set of reproducible midgame positions to a fixed depth with
+ * 1 to N threads, prints nodes per second for each thread count, and checks
+ * that the root scores match the single-threaded search.
+ *
+ * Usage: SearchScaling [maxThreads] [depth] [positions]
+ */
+public class SearchScaling {
+
+	public static void main(String[] args) {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int positions = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+
+		CCBoard[] boards = new CCBoard[positions];
+		for (int i = 0; i < positions; i++) {
+			boards[i] = randomPosition(i, 40 + i * 20);
+		}
+
+		double[] reference = null;
+		double referenceRate = 0;
+		System.out.println("threads  nodes        ms      nodes/s   speedup  scores");
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			CCMiniMaxPlayer player = new CCMiniMaxPlayer("Scaling");
+			player.setPlayerID(0);
+			player.setThreads(threads);
+
+			double[] scores = new double[positions];
+			long nodes = 0;
+			long time = 0;
+			for (int i = 0; i < positions; i++) {
+				CCBoard board = (CCBoard) boards[i].clone();
+				long start = System.nanoTime();
+				scores[i] = player.search(board, depth, 0).getFirst();
+				time += System.nanoTime() - start;
+				nodes += player.getNodes();
+			}
+			player.gameOver("");
+
+			boolean match = true;
+			if (reference == null) {
+				reference = scores;
+			} else {
+				for (int i = 0; i < positions; i++) {
+					match &= Double.compare(scores[i], reference[i]) == 0;
+				}
+			}
+			double rate = nodes * 1e9 / Math.max(1, time);
+			if (threads == 1) {
+				referenceRate = rate;
+			}
+			System.out.println(String.format("%7d %10d %8d %12.0f %8.2fx  %s",
+					threads, nodes, time / 1000000, rate, rate / referenceRate, match ? "match" : "MISMATCH"));
+		}
+	}
+
+	/**
+	 * Play random legal moves from the initial position until it is the
+	 * start of player 0's turn again.
+	 */
+	static CCBoard randomPosition(long seed, int plies) {
+		CCBoard board = new CCBoard();
+		Random random = new Random(seed);
+		for (int i = 0; i < plies || board.getLastMoved() != null || board.getTurn() != 0; i++) {
+			ArrayList<CCMove> moves = board.getLegalMoves();
+			board.move(moves.get(random.nextInt(moves.size())));
+		}
+		return board;
+	}
+}